@@ -0,0 +1,62 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+/**
+ * Measures the heap taken by each <code>TaskID</code>, by the difference in used heap before and after creating many
+ * of them (sharing one <code>TaskInfo</code>). The result includes the slot of the array holding each
+ * <code>TaskID</code>, i.e. 4 bytes with compressed references. Run with <code>ant footprint</code> (see
+ * <code>build.xml</code>), optionally passing the number of <code>TaskID</code>s to create.
+ */
+public class TaskIDFootprint {
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		//-- a single System.gc() does not always collect everything
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(50);
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		TaskInfo taskInfo = new TaskInfo();
+
+		//-- warm up, so that the classes and the counters are already allocated
+		TaskID<?>[] taskIDs = new TaskID<?>[count];
+		for (int i = 0; i < count; i++)
+			taskIDs[i] = new TaskID<Object>(taskInfo);
+		taskIDs = null;
+
+		long before = usedHeap();
+		taskIDs = new TaskID<?>[count];
+		for (int i = 0; i < count; i++)
+			taskIDs[i] = new TaskID<Object>(taskInfo);
+		long after = usedHeap();
+
+		System.out.printf("%d TaskIDs: %.1f bytes each (including the array slot)%n", count, (after - before) / (double) count);
+		if (taskIDs[count - 1] == null)
+			throw new AssertionError();
+	}
+}
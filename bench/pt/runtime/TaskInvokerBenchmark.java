@@ -0,0 +1,153 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ways of invoking the method of a task (see {@link TaskInvoker.Strategy}), with the arguments boxed in an
+ * <code>Object[]</code> as they are in a <code>TaskInfo</code>. Each strategy is measured for a single method (i.e. a
+ * monomorphic call site), and for several methods invoked through the same call site, as is the case for the worker
+ * threads executing different tasks. Run with <code>ant bench -Djmh.lib=...</code> (see <code>build.xml</code>).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TaskInvokerBenchmark {
+
+	/**
+	 * The methods of the tasks.
+	 */
+	public static class Tasks {
+
+		public static int add(int a, int b) {
+			return a + b;
+		}
+
+		public Object echo(Object o) {
+			return o;
+		}
+
+		public static String concat(String a, String b, String c) {
+			return a;
+		}
+
+		public static void touch(Object o) {
+		}
+
+		public static long five(int a, long b, int c, long d, int e) {
+			return a + b + c + d + e;
+		}
+	}
+
+	@Param({ "REFLECTION", "LAMBDA", "HANDLE" })
+	public String strategy;
+
+	private final Tasks instance = new Tasks();
+
+	private TaskInvoker addInvoker;
+	private TaskInvoker echoInvoker;
+	private Method addMethod;
+	private Method echoMethod;
+
+	private final Object[] addArgs = { 1, 2 };
+	private final Object[] echoArgs = { "x" };
+
+	//-- the methods invoked in turn through the same call site
+	private TaskInvoker[] mixedInvokers;
+	private Method[] mixedMethods;
+	private Object[] mixedInstances;
+	private Object[][] mixedArgs;
+	private int next = 0;
+
+	@Setup
+	public void setUp() throws Throwable {
+		TaskInvoker.Strategy s = TaskInvoker.Strategy.valueOf(strategy);
+		addMethod = Tasks.class.getMethod("add", int.class, int.class);
+		echoMethod = Tasks.class.getMethod("echo", Object.class);
+		addInvoker = TaskInvoker.create(addMethod, s);
+		echoInvoker = TaskInvoker.create(echoMethod, s);
+
+		mixedMethods = new Method[] { addMethod, echoMethod,
+				Tasks.class.getMethod("concat", String.class, String.class, String.class),
+				Tasks.class.getMethod("touch", Object.class) };
+		mixedInstances = new Object[] { null, instance, null, null };
+		mixedArgs = new Object[][] { addArgs, echoArgs, { "a", "b", "c" }, { "y" } };
+		mixedInvokers = new TaskInvoker[mixedMethods.length];
+		for (int i = 0; i < mixedMethods.length; i++)
+			mixedInvokers[i] = TaskInvoker.create(mixedMethods[i], s);
+	}
+
+	@Benchmark
+	public Object staticMethod() throws Exception {
+		return addInvoker.invoke(null, addArgs);
+	}
+
+	@Benchmark
+	public Object instanceMethod() throws Exception {
+		return echoInvoker.invoke(instance, echoArgs);
+	}
+
+	@Benchmark
+	public Object mixedMethods() throws Exception {
+		int i = next = (next + 1) & 3;
+		return mixedInvokers[i].invoke(mixedInstances[i], mixedArgs[i]);
+	}
+
+	/**
+	 * Methods with more arguments than the generated functional interfaces take.
+	 */
+	@State(Scope.Thread)
+	public static class ManyArguments {
+
+		@Param({ "REFLECTION", "HANDLE" })
+		public String strategy;
+
+		private TaskInvoker invoker;
+		private final Object[] args = { 1, 2L, 3, 4L, 5 };
+
+		@Setup
+		public void setUp() throws Throwable {
+			Method method = Tasks.class.getMethod("five", int.class, long.class, int.class, long.class, int.class);
+			invoker = TaskInvoker.create(method, TaskInvoker.Strategy.valueOf(strategy));
+		}
+	}
+
+	@Benchmark
+	public Object manyArguments(ManyArguments state) throws Exception {
+		return state.invoker.invoke(null, state.args);
+	}
+}
@@ -77,6 +77,38 @@ public class SourceHelper {
 		}
 	}
 	
+	/**
+	 * Returns the primitive-specialised <code>TaskIDGroup</code> returned by a multi-task of the given type, or
+	 * <code>null</code> if the type has no specialised group.
+	 */
+	public static String getPrimitiveTaskIDGroup(Type type) {
+		if (!(type instanceof PrimitiveType))
+			return null;
+		
+		switch (((PrimitiveType)type).getType()) {
+		case Integer:
+			return "IntTaskIDGroup";
+		case Long:
+			return "LongTaskIDGroup";
+		case Double:
+			return "DoubleTaskIDGroup";
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the method of <code>TaskCall</code> that returns the given type without boxing it (overridden by the 
+	 * <code>TaskCall</code> of a multi-task stored in a primitive-specialised <code>TaskIDGroup</code>), or 
+	 * <code>null</code> if the type has no specialised group.
+	 */
+	public static String getPrimitiveTaskCallMethod(Type type) {
+		String group = getPrimitiveTaskIDGroup(type);
+		if (group == null)
+			return null;
+		return "call" + group.substring(0, group.indexOf("TaskIDGroup"));
+	}
+	
 	/**
 	 * Completely unreliable way to strip generic parameters from the name of a type.
 	 */
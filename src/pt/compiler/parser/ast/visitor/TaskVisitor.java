@@ -573,8 +573,13 @@ public final class TaskVisitor implements VoidVisitor<Object> {
         //-- return type and method name
         Type type = method.getType();
         if (isTaskMethod) {
-        	printer.print(SourceHelper.makeGeneric(isMultiTask ? "TaskIDGroup" : "TaskID",
-        			SourceHelper.makeBoxedIfPrimitive(type)));
+        	//-- multi-tasks returning int, long or double get a group that stores the results unboxed
+        	String primitiveGroup = isMultiTask && method.getArrayCount() == 0 ? SourceHelper.getPrimitiveTaskIDGroup(type) : null;
+        	if (primitiveGroup != null)
+        		printer.print(primitiveGroup);
+        	else
+        		printer.print(SourceHelper.makeGeneric(isMultiTask ? "TaskIDGroup" : "TaskID",
+        				SourceHelper.makeBoxedIfPrimitive(type)));
             printer.print(" " + method.getName());
         } else { 
             type.accept(this, arg);
@@ -675,6 +680,142 @@ public final class TaskVisitor implements VoidVisitor<Object> {
     	});
     }
     
+	/*
+	 * Checks whether the task is called directly through a generated subclass of TaskCall. This needs a method body, and
+	 * the static nested class cannot refer to type variables of the method or of the enclosing class. Otherwise, the task
+	 * is invoked through its Method.
+	 */
+	private boolean hasTaskCall(TaskDeclaration task) {
+		MethodDeclaration method = task.getMethodDeclaration();
+		ClassOrInterfaceDeclaration currentClass = currentClassStack.peek();
+		return method.getBody() != null && !currentClass.isInterface()
+				&& method.getTypeParameters() == null && currentClass.getTypeParameters() == null;
+	}
+	
+	/*
+	 * Prints the subclass of TaskCall that captures the arguments of the task in typed fields (named after the 
+	 * parameters), and calls the __pt__ method of the task directly.
+	 */
+	private void printTaskCall(TaskDeclaration task) {
+		MethodDeclaration method = task.getMethodDeclaration();
+		List<Parameter> params = method.getParameters();
+		String className = getMethodUniqueName(method) + "_TaskCall";
+		
+		//-- the parameter types (to look up the Method, if needed), the fields and the arguments of the call
+		StringBuilder parameterClasses = new StringBuilder();
+		List<String> fields = new ArrayList<String>();
+		List<String> setCases = new ArrayList<String>();
+		List<String> getCases = new ArrayList<String>();
+		StringBuilder arguments = new StringBuilder();
+		if (params != null) {
+			for (int i = 0; i < params.size(); i++) {
+				Parameter p = params.get(i);
+				String type = getParameterType(p);
+				String field = "this." + p.getId().getName();
+				
+				parameterClasses.append(", " + getErasedType(type) + ".class");
+				fields.add(type + " " + p.getId().getName() + ";");
+				//-- primitives are unboxed by the cast
+				setCases.add("case " + i + ": " + field + " = (" + type + ") value; return;");
+				getCases.add("case " + i + ": return " + field + ";");
+				if (i > 0)
+					arguments.append(", ");
+				arguments.append(field);
+			}
+		}
+		
+		String call = PT_PREFIX + method.getName() + "(" + arguments + ")";
+		if (!ModifierSet.isStatic(method.getModifiers()))
+			call = "((" + currentClassStack.peek().getName() + ") instance)." + call;
+		
+		printer.printLn("private static final class " + className + " extends TaskCall {", method.getBeginLine());
+		printer.indent();
+		printer.printLn("private static final TaskCall.Signature SIGNATURE = new TaskCall.Signature(" + className + ".class, \"" 
+				+ PT_PREFIX + method.getName() + "\"" + parameterClasses + ");", -1);
+		for (String field : fields)
+			printer.printLn(field, -1);
+		SourceHelper.printFormattedCode(printer, new String[] {
+			className + "() {",
+				"super(SIGNATURE);",
+			"}",
+			"protected Object call(Object instance) throws Throwable {"
+		});
+		if (method.getType() instanceof VoidType) {
+			printer.printLn(call + ";", -1);
+			printer.printLn("return null;", -1);
+		} else {
+			printer.printLn("return " + call + ";", -1);
+		}
+		printer.unindent();
+		printer.printLn("}", -1);
+		
+		//-- the group of a multi-task returning int, long or double stores the results without boxing them
+		boolean isMultiTask = !task.getMultiTaskSize().equals("-");
+		String primitiveCall = isMultiTask && method.getArrayCount() == 0 ? SourceHelper.getPrimitiveTaskCallMethod(method.getType()) : null;
+		if (primitiveCall != null) {
+			printer.printLn("protected " + method.getType() + " " + primitiveCall + "(Object instance) throws Throwable {", -1);
+			printer.indent();
+			printer.printLn("return " + call + ";", -1);
+			printer.unindent();
+			printer.printLn("}", -1);
+		}
+		printArgumentSwitch("protected void setArgument(int index, Object value) {", setCases);
+		printArgumentSwitch("protected Object getArgument(int index) {", getCases);
+		printer.unindent();
+		printer.printLn("}", -1);
+	}
+	
+	private void printArgumentSwitch(String signature, List<String> cases) {
+		printer.printLn(signature, -1);
+		printer.indent();
+		printer.printLn("switch (index) {", -1);
+		for (String c : cases)
+			printer.printLn(c, -1);
+		printer.printLn("}", -1);
+		printer.printLn("throw new IndexOutOfBoundsException(\"No argument \" + index);", -1);
+		printer.unindent();
+		printer.printLn("}", -1);
+	}
+	
+	/*
+	 * Checks whether the arguments of this version of the task are captured in the fields of its TaskCall. This is not
+	 * the case for versions taking BlockingQueues (pipeline stages), or Objects that are only checked for TaskIDs and
+	 * BlockingQueues at runtime. Those versions pass the arguments as an array.
+	 */
+	private boolean capturesArguments(TaskDeclaration task, String[] paramTypes) {
+		return hasTaskCall(task) && SourceHelper.findMatchingIndexes(paramTypes, "BlockingQueue").isEmpty()
+				&& SourceHelper.findMatchingIndexes(paramTypes, "Object").isEmpty();
+	}
+	
+	/*
+	 * Returns the declared type of the parameter, including the array dimensions of varargs and of the parameter name.
+	 */
+	private String getParameterType(Parameter p) {
+		StringBuilder type = new StringBuilder(p.getType().toString());
+		if (p.isVarArgs())
+			type.append("[]");
+		for (int i = 0; i < p.getId().getArrayCount(); i++)
+			type.append("[]");
+		return type.toString();
+	}
+	
+	/*
+	 * Returns the type without any type arguments, e.g. List[] for List<String>[].
+	 */
+	private String getErasedType(String type) {
+		StringBuilder erased = new StringBuilder();
+		int depth = 0;
+		for (char c : type.toCharArray()) {
+			if (c == '<')
+				depth++;
+			else if (c == '>')
+				depth--;
+			else if (depth == 0)
+				erased.append(c);
+		}
+		return erased.toString();
+	}
+	
 	private void printOriginalMethod(TaskDeclaration task, Object arg) {
 		MethodDeclaration method = task.getMethodDeclaration();
 		
@@ -747,13 +888,15 @@ public final class TaskVisitor implements VoidVisitor<Object> {
         	printer.printLn(" {", method.getBody().getBeginLine());
             printer.indent();
             
-            //-- code to ensure the Method object is set
-            SourceHelper.printFormattedCode(printer,  new String[] {
-            	"// ensure Method variable is set",
-            	"if (" + methodVar + " == null) {",
-            		methodUniqueName + "_ensureMethodVarSet();",
-            	"}"
-            });
+            //-- code to ensure the Method object is set (not needed if the task is called directly)
+            if (!hasTaskCall(task)) {
+	            SourceHelper.printFormattedCode(printer,  new String[] {
+	            	"// ensure Method variable is set",
+	            	"if (" + methodVar + " == null) {",
+	            		methodUniqueName + "_ensureMethodVarSet();",
+	            	"}"
+	            });
+            }
         	
         	//-- test if this is the general version which converts all params to Object type
         	if (paramTypes.length != 0 && paramTypes.length == SourceHelper.findMatchingIndexes(paramTypes, "Object").size()) {
@@ -829,11 +972,28 @@ public final class TaskVisitor implements VoidVisitor<Object> {
 	        	}
         	}
 
-            //-- set arguments
-            printer.printLn("taskinfo.setParameters(" + getParamsWithoutTypes(method) + ");", -1);
-            
-            //-- set method
-            printer.printLn("taskinfo.setMethod(" + methodVar + ");", -1);
+            //-- set arguments and method
+            String taskCallClass = methodUniqueName + "_TaskCall";
+            if (capturesArguments(task, paramTypes)) {
+            	String taskCallVar = PT_PREFIX + "taskCall";
+            	printer.printLn(taskCallClass + " " + taskCallVar + " = new " + taskCallClass + "();", -1);
+            	if (params != null) {
+            		for (int i = 0; i < params.size(); i++) {
+            			String id = params.get(i).getId().getName();
+            			if (paramTypes[i] != null && paramTypes[i].equals("TaskID"))
+            				printer.printLn(taskCallVar + ".setTaskIdArgument(" + i + ", " + id + ");", -1);
+            			else
+            				printer.printLn(taskCallVar + "." + id + " = " + id + ";", -1);
+            		}
+            	}
+            	printer.printLn("taskinfo.setTaskCall(" + taskCallVar + ");", -1);
+            } else if (hasTaskCall(task)) {
+            	printer.printLn("taskinfo.setParameters(" + getParamsWithoutTypes(method) + ");", -1);
+            	printer.printLn("taskinfo.setTaskCall(new " + taskCallClass + "());", -1);
+            } else {
+            	printer.printLn("taskinfo.setParameters(" + getParamsWithoutTypes(method) + ");", -1);
+            	printer.printLn("taskinfo.setMethod(" + methodVar + ");", -1);
+            }
             
             //-- set instance to self if the method is not static
             if (!ModifierSet.isStatic(method.getModifiers()))
@@ -845,7 +1005,10 @@ public final class TaskVisitor implements VoidVisitor<Object> {
             
         	//-- enqueue and return TaskID
         	if (isMultiTask) {
-        		printer.print("return TaskpoolFactory.getTaskpool().enqueueMulti(taskinfo, ");
+        		//-- the runtime creates the specialised group, based on the return type of the method
+        		String primitiveGroup = method.getArrayCount() == 0 ? SourceHelper.getPrimitiveTaskIDGroup(method.getType()) : null;
+        		printer.print("return " + (primitiveGroup != null ? "(" + primitiveGroup + ") " : "") 
+        				+ "TaskpoolFactory.getTaskpool().enqueueMulti(taskinfo, ");
         		printer.print(task.getMultiTaskSize().equals("*") ? "-1" : task.getMultiTaskSize());
         		printer.printLn(");", -1);
         	} else {
@@ -871,33 +1034,38 @@ public final class TaskVisitor implements VoidVisitor<Object> {
     	
     	//-- print variables needed for this task
 		String methodUniqueName = getMethodUniqueName(method);
-    	String methodVar = methodUniqueName + "_method";
-    	//-- TODO  Need to make sure this is only printed once for each method (e.g. when a method is overriden, or an interface implemented)
-    	if (!currentClassStack.peek().isInterface()) {
-    		// TODO: check if these can be static
-    		printer.printLn("private static volatile Method " + methodVar + " = null;", method.getBeginLine());
+    	if (hasTaskCall(task)) {
+    		//-- the task is called directly, so there is no need for the Method
+    		printTaskCall(task);
+    	} else {
+	    	String methodVar = methodUniqueName + "_method";
+	    	//-- TODO  Need to make sure this is only printed once for each method (e.g. when a method is overriden, or an interface implemented)
+	    	if (!currentClassStack.peek().isInterface()) {
+	    		// TODO: check if these can be static
+	    		printer.printLn("private static volatile Method " + methodVar + " = null;", method.getBeginLine());
+	    	}
+	    	
+	    	//-- print method to ensure Method variable set
+	    	String currentClassVar = "new ParaTaskHelper.ClassGetter().getCurrentClass()";
+	    	SourceHelper.printFormattedCode(printer, new String[] {
+	    		"private synchronized static void " + methodUniqueName + "_ensureMethodVarSet() {",
+	    			"if (" + methodVar + " == null) {",
+	    				"try {",
+							methodVar + " = ParaTaskHelper.getDeclaredMethod(" + currentClassVar + ", \"" + PT_PREFIX + method.getName() + "\", new Class[] {",
+	    						SourceHelper.join(params, ", ", new Func<String, Parameter>() {
+	    							public String map(Parameter p) {
+	    								return SourceHelper.stripGenerics(p.getType().toString()) + ".class";
+	    							}
+	    						}),
+							"});",
+	    				"} catch (Exception e) {",
+	    					"e.printStackTrace();",
+	    				"}",
+	    			"}",
+	    		"}"
+	        });
     	}
     	
-    	//-- print method to ensure Method variable set
-    	String currentClassVar = "new ParaTaskHelper.ClassGetter().getCurrentClass()";
-    	SourceHelper.printFormattedCode(printer, new String[] {
-    		"private synchronized static void " + methodUniqueName + "_ensureMethodVarSet() {",
-    			"if (" + methodVar + " == null) {",
-    				"try {",
-						methodVar + " = ParaTaskHelper.getDeclaredMethod(" + currentClassVar + ", \"" + PT_PREFIX + method.getName() + "\", new Class[] {",
-    						SourceHelper.join(params, ", ", new Func<String, Parameter>() {
-    							public String map(Parameter p) {
-    								return SourceHelper.stripGenerics(p.getType().toString()) + ".class";
-    							}
-    						}),
-						"});",
-    				"} catch (Exception e) {",
-    					"e.printStackTrace();",
-    				"}",
-    			"}",
-    		"}"
-        });
-    	
     	//-- we need to generate method bodies for different original/taskid/queue types
     	//-- BUT only if the are 3 or less parameters to avoid code bloat
     	final int PERMUTE_THRESHOLD = 3;
@@ -53,6 +53,7 @@ public class CircularBlockingDeque<E> extends LinkedBlockingDeque<E> {
         if (f != null && l!= null) {
 	        Node<E> x = new Node<E>(e, l, f);
 	        first = x;
+	        f.prev = x;
 	        l.next = x;
         } else { // It is the first node inserted
         	Node<E> x = new Node<E>(e, null, null);
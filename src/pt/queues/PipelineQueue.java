@@ -1,19 +1,272 @@
 package pt.queues;
 
+import java.util.Collection;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 
+import pt.runtime.PipelineCapacity.Overflow;
 import pt.runtime.TaskID;
 
+/**
+ * The queue connecting two pipeline stages, from the stage producing the elements (the head task) to the stage 
+ * consuming them (the tail task).
+ * <br><br>
+ * The consuming stage may register a readiness listener, which is notified whenever an element is added to the queue. 
+ * This way, the stage does not need to poll its input queues, but can wait until it is notified. 
+ * <br><br>
+ * The queue may have a capacity (see {@link #setCapacity(int, Overflow)}), which only applies to the elements written 
+ * by the producing stage (see {@link #writeAll(Collection)}). Once the queue is full, the 
+ * elements are either dropped, or the producing stage waits until {@link #hasSpace()} (in which case the space listener
+ * is notified when the consuming stage takes elements). The elements are still held by an unbounded deque, so the 
+ * size of the queue remains the number of elements waiting to be consumed.
+ */
 public class PipelineQueue<E> extends LinkedBlockingDeque<E> {
 	
 	private TaskID head;
 	private TaskID tail;
+	
+	private volatile Runnable readinessListener = null;
+	
+	private volatile int capacity = Integer.MAX_VALUE;
+	private volatile Overflow overflow = Overflow.BLOCK;
+	
+	//-- set once the producing stage has found this queue full, until the consuming stage takes an element
+	private volatile boolean full = false;
+	private volatile Runnable spaceListener = null;
 
 	public PipelineQueue(TaskID head, TaskID tail) {
 		this.head = head;
 		this.tail = tail;
 	}
 	
+	/**
+	 * Sets the listener that is notified (in the thread adding the element) whenever an element is added to this queue.
+	 */
+	public void setReadinessListener(Runnable listener) {
+		readinessListener = listener;
+	}
+	
+	private void elementAdded() {
+		Runnable listener = readinessListener;
+		if (listener != null)
+			listener.run();
+	}
+	
+	/**
+	 * Sets the maximum number of elements written by the producing stage that may wait in this queue, and what 
+	 * happens to elements written once it is full.
+	 */
+	public void setCapacity(int capacity, Overflow overflow) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Pipeline queue capacity must be at least 1, not " + capacity);
+		if (overflow == null)
+			throw new IllegalArgumentException("Pipeline queue overflow must not be null");
+		this.capacity = capacity;
+		this.overflow = overflow;
+		elementsRemoved();
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	public Overflow getOverflow() {
+		return overflow;
+	}
+	
+	/**
+	 * Sets the listener that is notified (in the thread taking the elements) when this queue has space again, after 
+	 * {@link #hasSpace()} returned <code>false</code>.
+	 */
+	public void setSpaceListener(Runnable listener) {
+		spaceListener = listener;
+	}
+	
+	/**
+	 * Returns whether the producing stage may write more elements, i.e. <code>false</code> only if the queue is full 
+	 * and its overflow is {@link Overflow#BLOCK}. In that case, the space listener is notified once the queue has 
+	 * space again.
+	 */
+	public boolean hasSpace() {
+		if (overflow != Overflow.BLOCK || size() < capacity)
+			return true;
+		
+		full = true;
+		
+		// the consuming stage may have taken elements before it could see the flag
+		return size() < capacity;
+	}
+	
+	private void elementsRemoved() {
+		if (full && size() < capacity) {
+			full = false;
+			Runnable listener = spaceListener;
+			if (listener != null)
+				listener.run();
+		}
+	}
+	
+	/**
+	 * Writes several elements produced by the producing stage, but only notifies the readiness listener once. Elements 
+	 * are dropped if the queue is full, unless its overflow is {@link Overflow#BLOCK}.
+	 */
+	public void writeAll(Collection<? extends E> c) {
+		boolean added = false;
+		for (E e : c)
+			added |= enqueue(e);
+		if (added)
+			elementAdded();
+	}
+	
+	/*
+	 * Only called by the producing stage, whose writes are serialised by its TaskID.
+	 */
+	private boolean enqueue(E e) {
+		switch (overflow) {
+		case DROP_NEWEST:
+			if (size() >= capacity)
+				return false;
+			break;
+		case DROP_OLDEST:
+			//-- added before dropping, so the consuming stage never finds the queue empty in between
+			super.offerLast(e);
+			while (size() > capacity)
+				super.pollFirst();
+			return true;
+		default:
+			//-- BLOCK: the producing stage checks hasSpace() before taking more elements
+			break;
+		}
+		return super.offerLast(e);
+	}
+	
+	//-- all the ways of adding elements to a LinkedBlockingDeque end up in one of the following methods
+	
+	@Override
+	public boolean offerFirst(E e) {
+		boolean added = super.offerFirst(e);
+		if (added)
+			elementAdded();
+		return added;
+	}
+	
+	@Override
+	public boolean offerLast(E e) {
+		boolean added = super.offerLast(e);
+		if (added)
+			elementAdded();
+		return added;
+	}
+	
+	@Override
+	public boolean offerFirst(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		boolean added = super.offerFirst(e, timeout, unit);
+		if (added)
+			elementAdded();
+		return added;
+	}
+	
+	@Override
+	public boolean offerLast(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		boolean added = super.offerLast(e, timeout, unit);
+		if (added)
+			elementAdded();
+		return added;
+	}
+	
+	@Override
+	public void putFirst(E e) throws InterruptedException {
+		super.putFirst(e);
+		elementAdded();
+	}
+	
+	@Override
+	public void putLast(E e) throws InterruptedException {
+		super.putLast(e);
+		elementAdded();
+	}
+	
+	/**
+	 * Adds all the elements, but only notifies the readiness listener once. 
+	 */
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		if (c == this)
+			throw new IllegalArgumentException();
+		
+		boolean added = false;
+		for (E e : c) {
+			if (!super.offerLast(e))
+				throw new IllegalStateException("Deque full");
+			added = true;
+		}
+		if (added)
+			elementAdded();
+		return added;
+	}
+	
+	//-- all the ways of taking elements from a LinkedBlockingDeque end up in one of the following methods
+	
+	@Override
+	public E pollFirst() {
+		E e = super.pollFirst();
+		if (e != null)
+			elementsRemoved();
+		return e;
+	}
+	
+	@Override
+	public E pollLast() {
+		E e = super.pollLast();
+		if (e != null)
+			elementsRemoved();
+		return e;
+	}
+	
+	@Override
+	public E pollFirst(long timeout, TimeUnit unit) throws InterruptedException {
+		E e = super.pollFirst(timeout, unit);
+		if (e != null)
+			elementsRemoved();
+		return e;
+	}
+	
+	@Override
+	public E pollLast(long timeout, TimeUnit unit) throws InterruptedException {
+		E e = super.pollLast(timeout, unit);
+		if (e != null)
+			elementsRemoved();
+		return e;
+	}
+	
+	@Override
+	public E takeFirst() throws InterruptedException {
+		E e = super.takeFirst();
+		elementsRemoved();
+		return e;
+	}
+	
+	@Override
+	public E takeLast() throws InterruptedException {
+		E e = super.takeLast();
+		elementsRemoved();
+		return e;
+	}
+	
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		int n = super.drainTo(c, maxElements);
+		if (n > 0)
+			elementsRemoved();
+		return n;
+	}
+	
+	@Override
+	public void clear() {
+		super.clear();
+		elementsRemoved();
+	}
+	
 	public TaskID getHeadTask() {
 		return head;
 	}
@@ -20,12 +20,36 @@
 package pt.runtime;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.util.List;
 
+/**
+ * Executes the slots of tasks, i.e. the methods of their <code>notify</code>, <code>notifyInterim</code> and 
+ * <code>asyncCatch</code> clauses, as well as the slot that finally sets a task with slots as complete. 
+ * <br><br>
+ * The task listener is used for all tasks, and may be set with {@link ParaTask#setTaskListener(AbstractTaskListener)}.
+ * ParaTask provides the following task listeners:
+ * <ul>
+ * <li>{@link GuiEdtTaskListener} executes the slots on the GUI event dispatch thread. This is the default if a GUI is present.</li>
+ * <li>{@link ExecutorTaskListener} executes the slots on a dedicated thread pool (the default, with a single thread, if no 
+ * GUI is present), or on an <code>Executor</code> supplied by the application.</li>
+ * <li>{@link WorkerTaskListener} executes the slots directly on the thread completing the task.</li>
+ * </ul>
+ * The slots of a completed task (its handler, its slots and the slot setting it as complete) are handed to the listener
+ * at once (see {@link #executeSlots(List)}), and must be executed in that order. Slots of different tasks may be 
+ * executed concurrently.
+ */
 public abstract class AbstractTaskListener implements Runnable {
 	
 	abstract public void executeSlot(Slot slot);
+	
+	/**
+	 * Executes the specified slots, one after the other in the order given. By default, every slot is passed to 
+	 * {@link #executeSlot(Slot)}, which is only correct if <code>executeSlot</code> executes slots in the order it receives them.
+	 */
+	public void executeSlots(List<Slot> slots) {
+		for (Slot slot : slots)
+			executeSlot(slot);
+	}
 
 	/**
 	 * Executes the specified slot. If an exception occurs while running the slot, this is stored in the slot.
@@ -33,47 +57,16 @@ public abstract class AbstractTaskListener implements Runnable {
 	 * @return	true if task executed successfully, false otherwise
 	 */
 	protected void doExecuteSlot(Slot slot) {
-			Method method = slot.getMethod();
-			int numArgs = method.getParameterTypes().length;
-			TaskID<?> taskID = slot.getTaskID();
 			Object interResult = null;
-			if (slot.isIntermediateResultSlot())
+			if (slot.isIntermediateResultSlot()) {
 				interResult = slot.getNextIntermediateResultValue();
-			
-			Object instance = slot.getInstance();
+				//-- nothing left to deliver, the result was delivered by an earlier execution of the slot 
+				if (interResult == null)
+					return;
+			}
 			
 			try {
-				// first check if this slot can be accessed from here...
-				if (Modifier.isPublic(method.getModifiers())) {
-					if (slot.isASetCompleteSlot()) {
-						//-- invoke ParaTaskHelper.setComplete(instance).. where 'instance' is 
-						//--   the actual TaskID whose (non-public) setComplete() we want to execute  
-						method.invoke(null, instance);
-					} else {
-						// the only argument a slot can have (if any) is a single TaskID that represents the task that completed
-						if (numArgs == 2)
-							method.invoke(instance, taskID, interResult);
-						else if (numArgs == 1)
-							method.invoke(instance, taskID);
-						else
-							method.invoke(instance);
-					}
-				} else {
-					try {
-						Method opener = method.getDeclaringClass().getMethod("__pt__accessPrivateSlot", new Class[] { 
-								Method.class, Object.class, TaskID.class, Object.class });
-
-						if (instance == null && Modifier.isStatic(method.getModifiers()))
-							throw new RuntimeException("Cannot use private static methods in clause: "+method);
-						
-						opener.invoke( instance, method, instance, taskID, interResult);
-	
-					} catch (SecurityException e) {
-						e.printStackTrace();
-					} catch (NoSuchMethodException e) {
-						e.printStackTrace();
-					}
-				}
+				slot.invoke(interResult);
 			} catch (IllegalArgumentException e) {
 				e.printStackTrace();
 			} catch (IllegalAccessException e) {
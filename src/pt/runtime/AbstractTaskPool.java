@@ -19,14 +19,12 @@
 
 package pt.runtime;
 
-import java.lang.ref.WeakReference;
 import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -67,7 +65,7 @@ public abstract class AbstractTaskPool implements Taskpool {
 		initialise();
 	}
 	
-	protected ConcurrentLinkedQueue<WeakReference<InteractiveThread>> cachedInteractiveThreadPool = new ConcurrentLinkedQueue<WeakReference<InteractiveThread>>();
+	protected InteractiveThreadPool interactiveThreadPool = new InteractiveThreadPool(this);
 	
 	/*
 	 * (schedule-specific) 
@@ -110,10 +108,11 @@ public abstract class AbstractTaskPool implements Taskpool {
 		
 		//determine if this task is being enqueued from within another task
 		//needed to propagate exceptions to outer tasks (in case they have a suitable handler))
-		Thread rt = taskinfo.setRegisteringThread();
+		taskinfo.setRegisteringThread();
 		
-		if (rt instanceof TaskThread)
-			taskID.setEnclosingTask(((TaskThread)rt).currentExecutingTask());
+		TaskThread rt = TaskThread.currentTaskThread();
+		if (rt != null)
+			taskID.setEnclosingTask(rt.currentExecutingTask());
 		
 		if (taskinfo.hasAnySlots())
 			taskinfo.setTaskIDForSlotsAndHandlers(taskID);
@@ -141,17 +140,18 @@ public abstract class AbstractTaskPool implements Taskpool {
 		if (count <= 0)
 			count = ThreadPool.getMultiTaskThreadPoolSize();
 		
-		TaskIDGroup<?> group = new TaskIDGroup(count, taskinfo);
+		TaskIDGroup<?> group = TaskIDGroup.createMultiTask(count, taskinfo);
 		group.setCount(count);
 		
 		ArrayList<TaskID<?>> allDependences = null;
 		if (taskinfo.getDependences() != null)
 			allDependences = ParaTask.allTasksInList(taskinfo.getDependences());
 			
-		Thread rt = taskinfo.setRegisteringThread();
+		taskinfo.setRegisteringThread();
 		
-		if (rt instanceof TaskThread)
-			group.setEnclosingTask(((TaskThread)rt).currentExecutingTask());
+		TaskThread rt = TaskThread.currentTaskThread();
+		if (rt != null)
+			group.setEnclosingTask(rt.currentExecutingTask());
 		
 		if (taskinfo.hasAnySlots())
 			taskinfo.setTaskIDForSlotsAndHandlers(group);
@@ -231,24 +231,17 @@ public abstract class AbstractTaskPool implements Taskpool {
 		
 		else{
 			interactiveTaskCount.incrementAndGet();
-			for (WeakReference<InteractiveThread> interactiveRef : cachedInteractiveThreadPool){
-				InteractiveThread interactiveThread = interactiveRef.get();
-				if(interactiveThread.isInactive()){
-					interactiveThread.setTaskID(taskID);
-					return;
-				}
-			}
 			
-			InteractiveThread newInteractiveThread = new InteractiveThread(this, taskID);
-			newInteractiveThread.start();
-			cachedInteractiveThreadPool.add(new WeakReference<InteractiveThread>(newInteractiveThread));
+			if (ParaTask.getInteractiveThreadType() == ParaTask.InteractiveThreadType.VIRTUAL
+					&& new VirtualInteractiveTask(this, taskID).startVirtual())
+				return;
+			
+			interactiveThreadPool.execute(taskID);
 		}
 	}
 	
 	protected void startPipelineTask(TaskID<?> taskID) {
-		PipelineThread pt = new PipelineThread(this, taskID);
-		taskID.setPipelineThread(pt);
-		pt.start();
+		PipelineStage.start(this, taskID);
 	}
 	
 	/*
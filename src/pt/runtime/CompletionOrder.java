@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the members of a <code>TaskIDGroup</code> in the order they complete, so that they may be consumed in that 
+ * order (see {@link TaskIDGroup#completionOrder()}), similar to an <code>ExecutorCompletionService</code>.
+ * <br><br>
+ * Each completing member claims the next position, and is stored there. A consumer waiting for a position that has not
+ * been filled yet executes other tasks (if it is a worker thread), and then parks until the next member completes.
+ */
+class CompletionOrder {
+
+	private final AtomicReferenceArray<TaskID<?>> members;
+	private final AtomicInteger nextPosition = new AtomicInteger(0);
+
+	private final ConcurrentLinkedQueue<Thread> waitingThreads = new ConcurrentLinkedQueue<Thread>();
+
+	CompletionOrder(int size) {
+		members = new AtomicReferenceArray<TaskID<?>>(size);
+	}
+
+	int size() {
+		return members.length();
+	}
+
+	/**
+	 * Records that a member has completed.
+	 */
+	void completed(TaskID<?> member) {
+		members.set(nextPosition.getAndIncrement(), member);
+
+		if (!waitingThreads.isEmpty()) {
+			Thread waiting;
+			while ((waiting = waitingThreads.poll()) != null)
+				LockSupport.unpark(waiting);
+		}
+	}
+
+	/**
+	 * Waits until the member at the specified position (in completion order) has completed, and returns it.
+	 */
+	TaskID<?> await(int position) {
+		TaskID<?> member = members.get(position);
+		if (member != null)
+			return member;
+
+		Thread current = Thread.currentThread();
+		WorkerThread worker = current instanceof WorkerThread ? (WorkerThread) current : null;
+		boolean registered = false;
+
+		while ((member = members.get(position)) == null) {
+			if (worker != null && worker.executeAnotherTask()) {
+				//-- keep executing other tasks (possibly the members themselves)
+			} else if (!registered) {
+				//-- re-check the position before parking, in case the member completed while registering
+				waitingThreads.add(current);
+				registered = true;
+			} else {
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(ParaTask.WORKER_SLEEP_DELAY));
+				registered = false;
+			}
+		}
+		return member;
+	}
+
+	Iterator<TaskID<?>> iterator() {
+		return new Iterator<TaskID<?>>() {
+			private int position = 0;
+
+			@Override
+			public boolean hasNext() {
+				return position < members.length();
+			}
+
+			@Override
+			public TaskID<?> next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return await(position++);
+			}
+		};
+	}
+}
@@ -47,11 +47,11 @@ public class CurrentTask {
      * @throws RuntimeException if not called from within a ParaTask task. 
      */
 	public static int currentThreadID() {
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.currentThreadID() may only be called from within a Task");
 		}
-		return ((TaskThread)t).getThreadID();
+		return t.getThreadID();
 	}
 	
 	 /**
@@ -66,11 +66,11 @@ public class CurrentTask {
       * @throws RuntimeException if not called from within a ParaTask task. 
      */
 	public static int currentThreadLocalID() {
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.currentThreadID() may only be called from within a Task");
 		}
-		return ((TaskThread)t).getThreadLocalID();
+		return t.getThreadLocalID();
 	}
 	
 	/**
@@ -99,7 +99,7 @@ public class CurrentTask {
 	 * @return <code>true</code> if the currently inside a task, <code>false</code> otherwise.
 	 */
 	public static boolean insideTask() {
-		return Thread.currentThread() instanceof TaskThread;
+		return TaskThread.currentTaskThread() != null;
 	}
 	
 
@@ -110,11 +110,11 @@ public class CurrentTask {
      * @throws RuntimeException if not called from within a ParaTask task. 
 	 */
 	public static int multiTaskSize() {
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.multiTaskSize() may only be called from within a Task");
 		}
-		return ((TaskThread)t).currentExecutingTask().multiTaskSize();
+		return t.currentExecutingTask().multiTaskSize();
 	}
 	
 
@@ -149,11 +149,11 @@ public class CurrentTask {
      * @throws RuntimeException if not called from within a ParaTask task. 
 	 */
 	public static TaskID currentTaskID() {
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.currentTaskID() may only be called from within a Task");
 		}
-		return ((TaskThread)t).currentExecutingTask();
+		return t.currentExecutingTask();
 	}
 	
 	/**
@@ -163,11 +163,11 @@ public class CurrentTask {
      * @throws RuntimeException if not called from within a ParaTask task. 
 	 */
 	public static int globalID() {
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.globalID() may only be called from within a Task");
 		}
-		return ((TaskThread)t).currentExecutingTask().globalID();
+		return t.currentExecutingTask().globalID();
 	}
 	
 	/**
@@ -178,11 +178,11 @@ public class CurrentTask {
      * @throws RuntimeException if not called from within a ParaTask task. 
 	 */
 	public static int relativeID() {
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.relativeID() may only be called from within a Task");
 		}
-		return ((TaskThread)t).currentExecutingTask().relativeID();
+		return t.currentExecutingTask().relativeID();
 	}
 	
 	/**
@@ -193,17 +193,18 @@ public class CurrentTask {
 	 * @return	<code>true</code> if the current task has been asked to cancel, <code>false</code> otherwise.
 	 */
 	public static boolean cancelRequested() {
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.cancelRequested() may only be called from within a Task");
 		}
-		return ((TaskThread)t).currentExecutingTask().cancelRequested();
+		return t.currentExecutingTask().cancelRequested();
 	}
 	
 	/**
 	 * Publish intermediate results. If any slots are registered to listen for interim results 
 	 * (i.e. using either the <code>notifyInterim</code> or <code>notifyInterimGUI</code> clause), this is the method to publish those
-	 * results to them.
+	 * results to them. Depending on each slot's {@link InterimDelivery}, results may be conflated, throttled or dropped,
+	 * rather than executing the slot once per result.
 	 * @param <E>	The type of the interim result to be published 
 	 * @param interimResult		The interim result being published.
      * @throws RuntimeException if not called from within a ParaTask task. 
@@ -214,8 +215,9 @@ public class CurrentTask {
 		if (interSlots == null)
 			return;
 		for (Slot s : interSlots) {
-			s.addIntermediateResult(interimResult.getClass(), interimResult);
-			id.callTaskListener(s);
+			//-- depending on the slot's interim delivery, the result may be delivered by a pending execution of the slot
+			if (s.addIntermediateResult(interimResult.getClass(), interimResult))
+				id.callTaskListener(s);
 		}
 	}
 	
@@ -224,19 +226,23 @@ public class CurrentTask {
 	 * Barrier synchronisation for multi-tasks. To avoid deadlock, it is important that all sub-tasks of the
 	 * multi-task call this method, otherwise sub-tasks will continue to wait and never complete! This is safe 
 	 * to call recursively and by multiple multi-tasks, since a "waiting" worker thread will in fact execute other
-	 * ready tasks while it waits for the sibling sub-tasks to also reach the barrier.
+	 * ready tasks while it waits for the sibling sub-tasks to also reach the barrier. Once there are no other tasks to
+	 * execute, the waiting thread spins briefly and then parks until the last sibling sub-task arrives.
+	 * <br><br>
+	 * Large multi-tasks count arrivals in a combining tree rather than a single counter (see 
+	 * {@link ParaTask#setBarrierCombiningThreshold(int)}).
 	 * @throws InterruptedException
 	 * @throws BrokenBarrierException
      * @throws RuntimeException if not called from within a ParaTask task. 
 	 */
 	public static void barrier() throws InterruptedException, BrokenBarrierException {
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.barrier() may only be called from within a (Multi-)Task");
 		}
-		TaskID ct = ((TaskThread)t).currentExecutingTask();
+		TaskID ct = t.currentExecutingTask();
 		if (ct.isMultiTask()) {
-			ct.getGroup().barrier();
+			ct.getGroup().barrier(ct.relativeID());
 		} else {
 			//-- no need for barrier since there are no siblings
 		}
@@ -253,11 +259,11 @@ public class CurrentTask {
 	 * 
 	 * */
 	public static boolean isOneoffTask(){
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.isOneoffTask() may only be called from within a Task");
 		}
-		return ((TaskThread)t).getThreadLocalID() == -1? true : false;
+		return t.getThreadLocalID() == -1? true : false;
 	}
 	
 	/**
@@ -270,11 +276,11 @@ public class CurrentTask {
 	 * 
 	 * */
 	public static boolean isMultiTask(){
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.isMultiTask() may only be called from within a Task");
 		}
-		return ((TaskThread)t).getThreadLocalID() != -1? true : false;
+		return t.getThreadLocalID() != -1? true : false;
 	}
 	
 	/**
@@ -286,11 +292,11 @@ public class CurrentTask {
 	 * 
 	 * */
 	public static boolean isSubTask(){
-		Thread t = Thread.currentThread();
-		if (!(t instanceof TaskThread)) {
+		TaskThread t = TaskThread.currentTaskThread();
+		if (t == null) {
 			throw new ParaTaskRuntimeException("ParaTask.isSubTask() may only be called from within a Task");
 		}
 	
-		return ((TaskThread)t).currentExecutingTask().isSubTask();
+		return t.currentExecutingTask().isSubTask();
 	}
 }
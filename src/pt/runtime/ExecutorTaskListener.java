@@ -0,0 +1,196 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task listener that executes the slots on an <code>Executor</code>, either a dedicated pool of (daemon) threads, or
+ * an <code>Executor</code> supplied by the application. 
+ * <br><br>
+ * The slots of a task (its interim slots, as well as the slots executed once it completes) are executed one after the 
+ * other in the order they are handed to the listener, so that interim results are delivered in order and before the 
+ * task is set as complete. The slots of different tasks may be executed concurrently, unless the pool has a single 
+ * thread (as the default task listener if no GUI is present).
+ */
+public class ExecutorTaskListener extends AbstractTaskListener {
+	
+	private static final long KEEP_ALIVE_SECONDS = 60;
+	
+	private final Executor executor;
+	
+	//-- the slots of each task waiting to be executed, removed once empty
+	private final ConcurrentHashMap<TaskID<?>, SlotQueue> queues = new ConcurrentHashMap<TaskID<?>, SlotQueue>();
+	
+	/**
+	 * Creates a task listener that executes the slots on a dedicated pool, with one thread per available processor.
+	 * Idle threads retire after a minute.
+	 */
+	public ExecutorTaskListener() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates a task listener that executes the slots on a dedicated pool with the specified number of threads.
+	 * Idle threads retire after a minute.
+	 * @param poolSize	The maximum number of threads executing slots.
+	 */
+	public ExecutorTaskListener(int poolSize) {
+		if (poolSize < 1)
+			throw new IllegalArgumentException("Trying to create a slot executor with " + poolSize + " threads");
+		
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger(0);
+					
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "ParaTask-SlotThread-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		this.executor = pool;
+	}
+	
+	/**
+	 * Creates a task listener that executes the slots on the specified executor.
+	 * @param executor	The executor to execute the slots on.
+	 */
+	public ExecutorTaskListener(Executor executor) {
+		if (executor == null)
+			throw new NullPointerException("Trying to create a task listener without an executor");
+		this.executor = executor;
+	}
+	
+	@Override
+	public void executeSlot(Slot slot) {
+		enqueue(slot.getTaskID(), Collections.singletonList(slot));
+	}
+	
+	@Override
+	public void executeSlots(List<Slot> slots) {
+		TaskID<?> taskID = null;
+		for (Slot slot : slots) {
+			if ((taskID = slot.getTaskID()) != null)
+				break;
+		}
+		enqueue(taskID, slots);
+	}
+	
+	private void enqueue(TaskID<?> taskID, final List<Slot> slots) {
+		if (taskID == null) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (Slot slot : slots)
+						doExecuteSlot(slot);
+				}
+			});
+			return;
+		}
+		
+		while (true) {
+			SlotQueue queue = queues.get(taskID);
+			if (queue == null) {
+				queue = new SlotQueue(taskID);
+				SlotQueue existing = queues.putIfAbsent(taskID, queue);
+				if (existing != null)
+					queue = existing;
+			}
+			//-- otherwise the queue has just been emptied and removed
+			if (queue.add(slots))
+				return;
+		}
+	}
+	
+	/*
+	 * The slots of one task, executed by at most one runnable at a time.
+	 */
+	private class SlotQueue implements Runnable {
+		
+		private final TaskID<?> taskID;
+		private final ArrayDeque<Slot> slots = new ArrayDeque<Slot>();
+		private boolean running = false;
+		private boolean removed = false;
+		
+		SlotQueue(TaskID<?> taskID) {
+			this.taskID = taskID;
+		}
+		
+		boolean add(List<Slot> newSlots) {
+			synchronized (this) {
+				if (removed)
+					return false;
+				slots.addAll(newSlots);
+				if (running)
+					return true;
+				running = true;
+			}
+			try {
+				executor.execute(this);
+			} catch (RuntimeException e) {
+				//-- e.g. rejected by a shut down executor: the slots stay queued, and the next add() tries again
+				synchronized (this) {
+					running = false;
+				}
+				throw e;
+			}
+			return true;
+		}
+		
+		@Override
+		public void run() {
+			while (true) {
+				Slot slot;
+				synchronized (this) {
+					slot = slots.poll();
+					if (slot == null) {
+						removed = true;
+						queues.remove(taskID, this);
+						return;
+					}
+				}
+				try {
+					doExecuteSlot(slot);
+				} catch (RuntimeException e) {
+					//-- the remaining slots of the task (e.g. the one setting it as complete) must still be executed
+					System.err.println("ParaTask found an unexpected exception while executing a slot: ");
+					e.printStackTrace(System.err);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		//nothing to do since the executor executes the slots
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import pu.RedLib.Reduction;
+
+/**
+ * Reduces the results of the sub-tasks of a multi-task incrementally, as the sub-tasks complete (see
+ * {@link TaskIDGroup#reduce(Reduction)}).
+ * <br><br>
+ * The reduction is only known once {@link TaskIDGroup#reduce(Reduction)} is first called. A sub-task's result therefore
+ * only takes part in the reduction once both the sub-task has completed and the reduction has been registered, so every
+ * leaf (one per relative ID) expects two arrivals. Whichever thread arrives second folds the result: either the thread
+ * completing the sub-task, or the thread registering the reduction (for sub-tasks that had already completed by then).
+ * <br><br>
+ * Results are folded in a binary combining tree keyed by relative ID. The last of the two children to arrive at a node
+ * combines them (left before right) and continues to the parent node, so the combining work is spread over the completing
+ * threads, and partial results are released as soon as they are combined. The answer is the same as a sequential fold
+ * for any associative reduction.
+ * <br><br>
+ * Reductions that are not associative are instead folded strictly in relative ID order (see
+ * {@link TaskIDGroup#reduceInOrder(Reduction)}): each result is folded as soon as all results before it have been folded.
+ */
+class GroupReduction<E> {
+
+	private final int size;
+
+	//-- arrivals at each leaf (the sub-task completing, and the reduction being registered)
+	private final AtomicIntegerArray leafArrivals;
+
+	//-- only written by the registering thread, before it arrives at any leaf
+	private Reduction<E> reduction = null;
+	private boolean inOrder;
+
+	//-- tree mode: partials[level][node] and the arrivals at each node of the next level
+	private AtomicReferenceArray<Object>[] partials;
+	private AtomicIntegerArray[] nodeArrivals;
+
+	//-- in-order mode: results waiting for the results before them
+	private AtomicReferenceArray<Object> pending;
+	private int nextToFold = 0;
+	private E accumulated;
+
+	private final CountDownLatch answerLatch = new CountDownLatch(1);
+	private volatile E answer;
+	private volatile Throwable failure;
+	private volatile ParaTaskRuntimeException cancellation;
+
+	GroupReduction(int size) {
+		this.size = size;
+		this.leafArrivals = new AtomicIntegerArray(size);
+	}
+
+	/**
+	 * Called when a sub-task has completed successfully (but before it is set as complete).
+	 */
+	void resultAvailable(TaskID<?> subTask) {
+		arriveAtLeaf(subTask);
+	}
+
+	/**
+	 * Called when a sub-task has completed without a result, because it was cancelled or threw an exception. The 
+	 * reduction then has no answer, so {@link #getAnswer()} throws rather than waiting for a result that never arrives.
+	 */
+	void resultUnavailable(TaskID<?> subTask) {
+		if (subTask.cancelledSuccessfully())
+			cancelled(new ParaTaskRuntimeException("Attempting to get the result of a cancelled Task!"));
+		else
+			fail(subTask.getException());
+	}
+	
+	/**
+	 * Called (once) by the thread registering the reduction, and folds the results of sub-tasks that have already completed.
+	 * The multi-task must have been expanded.
+	 */
+	void register(Reduction<E> reduction, boolean inOrder, TaskIDGroup<E> group) {
+		this.reduction = reduction;
+		this.inOrder = inOrder;
+
+		if (inOrder) {
+			pending = new AtomicReferenceArray<Object>(size);
+		} else {
+			int levels = 1;
+			for (int width = size; width > 1; width = (width + 1) / 2)
+				levels++;
+
+			partials = new AtomicReferenceArray[levels];
+			nodeArrivals = new AtomicIntegerArray[levels];
+			int width = size;
+			for (int level = 0; level < levels; level++) {
+				partials[level] = new AtomicReferenceArray<Object>(width);
+				nodeArrivals[level] = new AtomicIntegerArray(width);
+				width = (width + 1) / 2;
+			}
+		}
+
+		for (Iterator<TaskID<?>> it = group.groupMembers(); it.hasNext(); )
+			arriveAtLeaf(it.next());
+	}
+
+	private void arriveAtLeaf(TaskID<?> subTask) {
+		if (leafArrivals.incrementAndGet(subTask.relativeID()) < 2 || failure != null || cancellation != null)
+			return;
+
+		try {
+			//-- the sub-task is not set as complete yet, so its result must be read without waiting
+			E result = (E) subTask.peekReturnResult();
+			if (inOrder)
+				foldInOrder(subTask.relativeID(), result);
+			else
+				foldInTree(subTask.relativeID(), result);
+		} catch (Throwable t) {
+			fail(t);
+		}
+	}
+
+	private void foldInTree(int node, E value) {
+		for (int level = 0; level < partials.length - 1; level++) {
+			partials[level].set(node, value);
+
+			int parent = node / 2;
+			int left = parent * 2;
+			int right = left + 1;
+			boolean hasRight = right < partials[level].length();
+
+			//-- the first child to arrive leaves its value for the second one to combine
+			if (hasRight && nodeArrivals[level + 1].incrementAndGet(parent) < 2)
+				return;
+
+			E leftValue = (E) partials[level].getAndSet(left, null);
+			if (hasRight)
+				value = reduction.reduce(leftValue, (E) partials[level].getAndSet(right, null));
+			else
+				value = leftValue;
+			node = parent;
+		}
+
+		setAnswer(value);
+	}
+
+	private void foldInOrder(int relativeID, E value) {
+		pending.set(relativeID, new Object[] { value });
+		synchronized (this) {
+			Object[] next;
+			while (nextToFold < size && (next = (Object[]) pending.getAndSet(nextToFold, null)) != null) {
+				E result = (E) next[0];
+				accumulated = nextToFold == 0 ? result : reduction.reduce(accumulated, result);
+				nextToFold++;
+			}
+			if (nextToFold == size)
+				setAnswer(accumulated);
+		}
+	}
+
+	private void setAnswer(E value) {
+		answer = value;
+		answerLatch.countDown();
+	}
+
+	private void fail(Throwable t) {
+		failure = t;
+		answerLatch.countDown();
+	}
+
+	private void cancelled(ParaTaskRuntimeException e) {
+		cancellation = e;
+		answerLatch.countDown();
+	}
+
+	/**
+	 * Waits for the last result to be folded. Only called once all the sub-tasks have completed, so at most the last few 
+	 * combining steps are still in progress. As when reading the result of a cancelled task, a 
+	 * <code>ParaTaskRuntimeException</code> is thrown if a sub-task was cancelled.
+	 */
+	E getAnswer() throws ExecutionException, InterruptedException {
+		answerLatch.await();
+		if (cancellation != null)
+			throw cancellation;
+		if (failure != null)
+			throw new ExecutionException(failure);
+		return answer;
+	}
+}
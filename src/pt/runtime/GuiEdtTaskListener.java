@@ -19,24 +19,74 @@
 
 package pt.runtime;
 
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /*
  * 
  * Extends the AbstractTaskListener to override the behaviour when this is used for the GUI EDT
+ * 
+ * Rather than posting one runnable to the EDT per slot, slots are added to a lock-free queue, and a single drain
+ * runnable is posted to the EDT while there are queued slots. Each time the drain runs, it executes at most 
+ * maxSlotsPerDrain slots (in the order they were queued), and posts itself again if more slots remain, so that 
+ * other events (e.g. painting) are handled in between when many tasks complete at once.
  *
  */
 public class GuiEdtTaskListener extends AbstractTaskListener {
 	
-	private void executeSlotOnEDT(final Slot slot) {
-		GuiThread.invokeLater(new Runnable() {
-			@Override
-			public void run() {
-				doExecuteSlot(slot);
-			}
-		});
+	private static volatile int maxSlotsPerDrain = 64;
+	
+	private final ConcurrentLinkedQueue<Slot> pendingSlots = new ConcurrentLinkedQueue<Slot>();
+	
+	//-- whether a drain runnable has been posted to the EDT, and has not started yet
+	private final AtomicBoolean drainPosted = new AtomicBoolean(false);
+	
+	private final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			drainSlots();
+		}
+	};
+	
+	static void setMaxSlotsPerDrain(int max) {
+		if (max < 1)
+			throw new IllegalArgumentException("Trying to execute " + max + " slots per drain of the EDT");
+		maxSlotsPerDrain = max;
+	}
+	
+	static int getMaxSlotsPerDrain() {
+		return maxSlotsPerDrain;
+	}
+	
+	private void postDrain() {
+		if (!drainPosted.get() && drainPosted.compareAndSet(false, true))
+			GuiThread.invokeLater(drain);
+	}
+	
+	private void drainSlots() {
+		//-- slots queued from now on post another drain (e.g. if a slot runs a nested event loop), while the 
+		//-- queue ensures they are still executed in order, since only the EDT takes slots from it
+		drainPosted.set(false);
+		
+		int max = maxSlotsPerDrain;
+		Slot slot;
+		for (int i = 0; i < max && (slot = pendingSlots.poll()) != null; i++)
+			doExecuteSlot(slot);
+		
+		if (!pendingSlots.isEmpty())
+			postDrain();
 	}
 
 	public void executeSlot(Slot slot) {
-		this.executeSlotOnEDT(slot);
+		pendingSlots.add(slot);
+		postDrain();
+	}
+	
+	@Override
+	public void executeSlots(List<Slot> slots) {
+		pendingSlots.addAll(slots);
+		postDrain();
 	}
 
 	@Override
@@ -44,4 +94,3 @@ public class GuiEdtTaskListener extends AbstractTaskListener {
 		//nothing to do since GUI EDT will execute slots in its own loop
 	}
 }
-
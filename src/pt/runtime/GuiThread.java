@@ -22,12 +22,28 @@ public class GuiThread {
 		initialized = true;
 	}
 	
+	/**
+	 * Checks whether the application may have a GUI, i.e. whether it runs on Android or on a JVM that is not headless.
+	 * In headless mode (see {@link ParaTask#isHeadless()}) this does not load any AWT classes.
+	 */
+	public static boolean isGuiPresent() {
+		if (ParaTask.isHeadless())
+			return false;
+		if ("Dalvik".equals(System.getProperty("java.vm.name")))
+			return true;
+		return !java.awt.GraphicsEnvironment.isHeadless();
+	}
+	
 	public static Thread getEventDispatchThread() {
 		return proxy.getEventDispatchThread();
 	}
 
+	/**
+	 * Checks whether the current thread is the event dispatch thread. Always <code>false</code> in headless mode, 
+	 * where the GUI thread is never initialised.
+	 */
 	public static boolean isEventDispatchThread() {
-		return proxy.isEventDispatchThread();
+		return initialized && proxy.isEventDispatchThread();
 	}
 
 	public static void invokeLater(Runnable r) {
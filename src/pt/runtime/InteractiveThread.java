@@ -20,65 +20,111 @@
 package pt.runtime;
 
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * A platform thread of the {@link InteractiveThreadPool}. After executing a task, the thread executes any tasks queued in the
+ * pool, and then becomes idle. An idle thread parks until a task is handed to it, or until the keep-alive time of the pool
+ * elapses (in which case the thread retires).
+ * <br><br>
+ * The hand-off slot is the only state shared with other threads. It is <code>IDLE</code> while the thread waits, and a 
+ * caller claims the thread by atomically replacing <code>IDLE</code> with the task. The thread retires by atomically replacing
+ * <code>IDLE</code> with <code>RETIRED</code>, so a task can never be handed to a retired thread.
+ */
 public class InteractiveThread extends TaskThread {
 
+	private static final Object IDLE = new Object();
+	private static final Object BUSY = new Object();
+	private static final Object RETIRED = new Object();
+	
+	//-- handed to an idle thread to make it execute the tasks queued in the pool
+	static final Object CHECK_QUEUED_TASKS = new Object();
+	
+	private final InteractiveThreadPool pool;
+	private final AtomicReference<Object> handOffSlot = new AtomicReference<Object>(BUSY);
+	
 	private TaskID<?> taskID = null;
-	private AtomicBoolean alive = new AtomicBoolean();
-	private AtomicBoolean setByThisThread = new AtomicBoolean();
 	
-	InteractiveThread(Taskpool taskpool, TaskID<?> taskID) {
+	InteractiveThread(Taskpool taskpool, InteractiveThreadPool pool, TaskID<?> taskID) {
 		super(taskpool);
-		alive.set(true);
-		setByThisThread.set(false);
+		this.pool = pool;
 		this.taskID = taskID;
 	}
 	
-	boolean isInactive(){
-		return(taskID == null && alive.get());
+	/**
+	 * Hands a task (or {@link #CHECK_QUEUED_TASKS}) to this thread, if it is idle. 
+	 * @return	<code>true</code> if this thread was idle and has been claimed, <code>false</code> otherwise.
+	 */
+	boolean handOff(Object task) {
+		if (handOffSlot.compareAndSet(IDLE, task)) {
+			LockSupport.unpark(this);
+			return true;
+		}
+		return false;
 	}
 	
-	void setTaskID(TaskID<?> taskID){
-		this.taskID = taskID;
-		this.setByThisThread.set(true);
-		interrupt();
+	private void executeInteractiveTask() {
+		boolean success = executeTask(taskID);
+		if (success) {
+			try {
+				if (!taskID.cancelledSuccessfully())
+					taskID.getReturnResult();
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		taskpool.interactiveTaskCompleted(taskID);
+		taskID = null;
 	}
 	
-	private void resetThread(){
-		taskpool.interactiveTaskCompleted(taskID);
-		this.taskID = null;
-		this.setByThisThread.set(false);
+	/*
+	 * Waits until a task is handed to this thread, or the keep-alive time elapses.
+	 * Returns false if this thread has retired.
+	 */
+	private boolean awaitHandOff() {
+		handOffSlot.set(IDLE);
+		pool.threadIdle(this);
+		
+		//-- a task may have been queued while this thread was still busy
+		if (pool.hasQueuedTasks() && handOffSlot.compareAndSet(IDLE, BUSY)) {
+			pool.threadNoLongerIdle(this);
+			return true;
+		}
+		
+		long deadline = System.nanoTime() + InteractiveThreadPool.getKeepAliveNanos();
+		Object handed;
+		while ((handed = handOffSlot.get()) == IDLE) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				if (handOffSlot.compareAndSet(IDLE, RETIRED)) {
+					pool.threadRetired(this);
+					return false;
+				}
+			} else {
+				LockSupport.parkNanos(this, remaining);
+			}
+			Thread.interrupted();	//-- parking returns immediately while the interrupt flag is set
+		}
+		
+		handOffSlot.set(BUSY);
+		if (handed instanceof TaskID)
+			taskID = (TaskID<?>) handed;
+		return true;
 	}
 
 	@Override
-	public void run() {	
-		while(taskID != null){
-			boolean success = executeTask(taskID);
-			if (success) {
-				try {
-					if (!taskID.cancelledSuccessfully())
-						taskID.getReturnResult();
-				} catch (ExecutionException e) {
-					e.printStackTrace();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
+	public void run() {
+		do {
+			if (taskID == null)
+				taskID = pool.pollQueuedTask();
 			
-			resetThread();
-			try{
-				Thread.sleep(ParaTask.INTERACTIVE_SLEEP_DELAY);
-			}catch(InterruptedException e){
-				if(!setByThisThread.get())
-					break;
-				Thread.interrupted();//for clearing the flag!
+			while (taskID != null) {
+				executeInteractiveTask();
+				taskID = pool.pollQueuedTask();
 			}
-		}
-		
-		/*without this flag, sometimes a taskID is added exactly before
-		 * run() method ends, and therefore taskID won't be executed.*/
-		alive.set(false);
+		} while (awaitHandOff());
 	}
 }
-
@@ -0,0 +1,167 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An elastic pool of {@link InteractiveThread}s, used to execute interactive tasks (<code>IO_TASK</code>) on platform threads.
+ * <br><br>
+ * Idle threads are kept on a lock-free stack, so that the most recently used thread is reused first and rarely used threads
+ * reach their keep-alive time and retire. A task is handed directly to an idle thread, which is parked with
+ * <code>LockSupport</code> until either a task is handed to it or its keep-alive time elapses. Each idle thread must be
+ * claimed (see {@link InteractiveThread#handOff(Object)}) before a task is given to it, so racing callers can never hand
+ * two tasks to the same thread.
+ * <br><br>
+ * New threads are only created while the number of live threads is below the maximum pool size. Beyond that, tasks are
+ * queued and executed in FIFO order by the next thread to finish its task. Note that, since interactive tasks may block
+ * on each other, a bounded pool may deadlock if all its threads wait for queued tasks.
+ */
+class InteractiveThreadPool {
+
+	private static volatile int maximumPoolSize = Integer.MAX_VALUE;
+	private static volatile long keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(ParaTask.INTERACTIVE_SLEEP_DELAY);
+
+	private final Taskpool taskpool;
+
+	//-- idle threads, used as a stack (the head is the most recently idle thread)
+	private final ConcurrentLinkedDeque<InteractiveThread> idleThreads = new ConcurrentLinkedDeque<InteractiveThread>();
+
+	//-- tasks waiting for a thread, once the maximum pool size has been reached
+	private final ConcurrentLinkedQueue<TaskID<?>> queuedTasks = new ConcurrentLinkedQueue<TaskID<?>>();
+
+	private final AtomicInteger liveThreads = new AtomicInteger(0);
+
+	InteractiveThreadPool(Taskpool taskpool) {
+		this.taskpool = taskpool;
+	}
+
+	static void setMaximumPoolSize(int size) {
+		if (size < 1)
+			throw new IllegalArgumentException("Trying to limit the interactive thread pool to " + size + " threads");
+		maximumPoolSize = size;
+	}
+
+	static int getMaximumPoolSize() {
+		return maximumPoolSize;
+	}
+
+	static void setKeepAliveTime(long time, TimeUnit unit) {
+		if (time < 0)
+			throw new IllegalArgumentException("Negative keep-alive time: " + time);
+		keepAliveNanos = unit.toNanos(time);
+	}
+
+	static long getKeepAliveNanos() {
+		return keepAliveNanos;
+	}
+
+	/**
+	 * Executes the specified interactive task on an idle thread, on a new thread, or (if the maximum pool size has been
+	 * reached) on the next thread to become available.
+	 */
+	void execute(TaskID<?> taskID) {
+		if (handOffToIdleThread(taskID))
+			return;
+
+		if (reserveThread()) {
+			new InteractiveThread(taskpool, this, taskID).start();
+			return;
+		}
+
+		queuedTasks.add(taskID);
+
+		//-- a thread may have become idle (or retired) since we looked
+		wakeThreadForQueuedTasks();
+	}
+
+	/**
+	 * Returns the number of live (busy or idle) interactive threads.
+	 */
+	int getPoolSize() {
+		return liveThreads.get();
+	}
+
+	TaskID<?> pollQueuedTask() {
+		return queuedTasks.poll();
+	}
+
+	boolean hasQueuedTasks() {
+		return !queuedTasks.isEmpty();
+	}
+
+	void threadIdle(InteractiveThread thread) {
+		idleThreads.addFirst(thread);
+	}
+
+	void threadNoLongerIdle(InteractiveThread thread) {
+		idleThreads.removeFirstOccurrence(thread);
+	}
+
+	/**
+	 * Called by a thread that has retired after its keep-alive time elapsed.
+	 */
+	void threadRetired(InteractiveThread thread) {
+		idleThreads.removeFirstOccurrence(thread);
+		liveThreads.decrementAndGet();
+
+		//-- a task may have been queued while this thread was retiring
+		wakeThreadForQueuedTasks();
+	}
+
+	private boolean handOffToIdleThread(Object task) {
+		InteractiveThread idle;
+		while ((idle = idleThreads.pollFirst()) != null) {
+			//-- the claim fails if the thread has retired, or was claimed by another caller
+			if (idle.handOff(task))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean reserveThread() {
+		int live;
+		do {
+			live = liveThreads.get();
+			if (live >= maximumPoolSize)
+				return false;
+		} while (!liveThreads.compareAndSet(live, live + 1));
+		return true;
+	}
+
+	private void wakeThreadForQueuedTasks() {
+		if (queuedTasks.isEmpty())
+			return;
+
+		if (handOffToIdleThread(InteractiveThread.CHECK_QUEUED_TASKS))
+			return;
+
+		if (reserveThread()) {
+			TaskID<?> taskID = queuedTasks.poll();
+			if (taskID != null)
+				new InteractiveThread(taskpool, this, taskID).start();
+			else
+				liveThreads.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Specifies how the interim results published by a task (see {@link CurrentTask#publishInterim(Object)}) are delivered 
+ * to a slot of a <code>notifyInterim</code> clause. Annotate the slot's method, for example:
+ * <br><br>
+ * <code>@InterimDelivery(mode = InterimDelivery.Mode.THROTTLED, intervalMillis = 50)</code><br>
+ * <code>void showProgress(TaskID id, Integer percent) { ... }</code>
+ * <br><br>
+ * Without this annotation, every interim result is delivered (see {@link Mode#ALL}).
+ * 
+ * @see Slot#setInterimDelivery(Mode, long, int)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface InterimDelivery {
+	
+	/**
+	 * The ways in which interim results may be delivered to a slot.
+	 */
+	public static enum Mode {
+		/**
+		 * Every interim result is queued, and the slot is executed once for each of them.
+		 */
+		ALL,
+		
+		/**
+		 * Only the latest interim result is kept. Results published while the slot is still waiting to be executed 
+		 * replace the previous result, so the slot is executed at most once per result and never falls behind.
+		 */
+		LATEST,
+		
+		/**
+		 * As for <code>LATEST</code>, but the slot is executed at most once per interval. The latest result is 
+		 * delivered at the end of the interval, or with the slots executed when the task completes if that is earlier.
+		 */
+		THROTTLED,
+		
+		/**
+		 * At most <code>capacity</code> interim results are queued, and the oldest result is dropped when a new 
+		 * result is published to a full queue. The remaining results are delivered in order.
+		 */
+		BOUNDED
+	}
+	
+	/**
+	 * The delivery mode.
+	 */
+	Mode mode() default Mode.ALL;
+	
+	/**
+	 * The minimum time between executions of the slot, in milliseconds (only used by {@link Mode#THROTTLED}).
+	 */
+	long intervalMillis() default 100;
+	
+	/**
+	 * The maximum number of queued interim results (only used by {@link Mode#BOUNDED}).
+	 */
+	int capacity() default 16;
+}
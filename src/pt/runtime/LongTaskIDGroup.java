@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * The <code>TaskIDGroup</code> of a multi-task whose method returns <code>long</code>. The ParaTask compiler returns this 
+ * type for <code>TASK(*)</code> methods returning <code>long</code>.
+ * <br><br>
+ * The result of each sub-task is stored in a <code>long</code> array indexed by relative ID, rather than as a boxed 
+ * <code>Long</code> in each sub-task's <code>TaskID</code> (see {@link PrimitiveTaskIDGroup}).
+ * 
+ * @see PrimitiveReduction
+ */
+public class LongTaskIDGroup extends PrimitiveTaskIDGroup<Long> {
+	
+	private final long[] results;
+	
+	LongTaskIDGroup(int groupSize, TaskInfo taskInfo) {
+		super(groupSize, taskInfo);
+		results = new long[groupSize];
+	}
+	
+	/**
+	 * Returns the result of a particular task, without boxing it.
+	 * @param relativeID The relative ID of the task whose result is wanted.
+	 * @return The result for that task.
+	 * @see #getInnerTaskResult(int)
+	 */
+	public long getLongResult(int relativeID) throws ExecutionException, InterruptedException {
+		awaitInnerTask(relativeID);
+		return results[relativeID];
+	}
+	
+	/**
+	 * Perform a reduction on the set of results, without boxing them. The results are combined in relative ID order.
+	 * <br><br>
+	 * This is not an overload of {@link #reduce(pu.RedLib.Reduction)}, since both reductions are functional interfaces and
+	 * a lambda passed to either method would be ambiguous.
+	 * @param red	The reduction to perform (e.g. {@link PrimitiveReduction#SUM})
+	 * @return The result of performing the reduction on the results of all the tasks in this group.
+	 */
+	public long reduceLong(LongBinaryOperator red) throws ExecutionException, InterruptedException {
+		awaitResultsToReduce();
+		
+		long answer = results[0];
+		for (int i = 1; i < results.length; i++)
+			answer = red.applyAsLong(answer, results[i]);
+		return answer;
+	}
+	
+	@Override
+	void callAndStore(int relativeID, TaskCall call, Object instance) throws Throwable {
+		results[relativeID] = call.callLong(instance);
+	}
+	
+	@Override
+	void store(int relativeID, Long result) {
+		results[relativeID] = result;
+	}
+	
+	@Override
+	Long load(int relativeID) {
+		return results[relativeID];
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A reusable barrier for the sub-tasks of a multi-task (see {@link CurrentTask#barrier()}).
+ * <br><br>
+ * Every use of the barrier is a new <i>generation</i>. A sub-task reads the current generation before it arrives, and
+ * waits until the generation has advanced. The last sub-task to arrive advances the generation, so a fast sub-task that
+ * already arrives at the next use of the barrier can never be confused with a slow sub-task still leaving the previous one.
+ * <br><br>
+ * Arrivals are counted in a combining tree keyed by the sub-task's relative ID, where each node counts the arrivals of at
+ * most <code>fanIn</code> children. The last arrival at a node resets the node and continues to the parent node, and the
+ * last arrival at the root advances the generation. For small groups the tree has a single node, i.e. a single counter.
+ * For large groups this spreads the arrivals over several counters instead of all sub-tasks contending on one.
+ * <br><br>
+ * A waiting worker thread first executes other ready tasks (since the sibling sub-tasks may be queued on that very worker),
+ * then spins briefly, and then parks until the last sub-task to arrive unparks it. Parking is bounded, so that a worker
+ * periodically checks for newly queued tasks.
+ */
+class MultiTaskBarrier {
+
+	private static final int SPINS = 1 << 10;
+	private static final long PARK_NANOS = 1000000;
+
+	//-- groups of at least this size use a combining tree (with this fan-in), smaller groups use a single counter
+	private static volatile int combiningThreshold = 64;
+	private static final int COMBINING_FAN_IN = 8;
+
+	private final int fanIn;
+
+	//-- nodes[level][node], the last level has a single (root) node
+	private final AtomicInteger[][] nodes;
+	private final int[][] expectedArrivals;
+
+	private volatile int generation = 0;
+
+	private final ConcurrentLinkedQueue<Thread> parkedThreads = new ConcurrentLinkedQueue<Thread>();
+
+	MultiTaskBarrier(int parties) {
+		if (parties < 1)
+			throw new IllegalArgumentException("Trying to create a barrier for " + parties + " sub-tasks");
+
+		fanIn = parties >= combiningThreshold ? COMBINING_FAN_IN : parties;
+
+		int levels = 1;
+		for (int width = ceilDiv(parties, fanIn); width > 1; width = ceilDiv(width, fanIn))
+			levels++;
+
+		nodes = new AtomicInteger[levels][];
+		expectedArrivals = new int[levels][];
+		int children = parties;
+		for (int level = 0; level < levels; level++) {
+			int width = ceilDiv(children, fanIn);
+			nodes[level] = new AtomicInteger[width];
+			expectedArrivals[level] = new int[width];
+			for (int node = 0; node < width; node++) {
+				nodes[level][node] = new AtomicInteger(0);
+				expectedArrivals[level][node] = Math.min(fanIn, children - node * fanIn);
+			}
+			children = width;
+		}
+	}
+
+	private static int ceilDiv(int a, int b) {
+		return (a + b - 1) / b;
+	}
+
+	static void setCombiningThreshold(int threshold) {
+		if (threshold < 2)
+			throw new IllegalArgumentException("Combining threshold must be at least 2, not " + threshold);
+		combiningThreshold = threshold;
+	}
+
+	static int getCombiningThreshold() {
+		return combiningThreshold;
+	}
+
+	/**
+	 * Arrives at the barrier on behalf of the sub-task with the specified relative ID, and waits until all sub-tasks have arrived.
+	 */
+	void await(int relativeID) {
+		//-- must be read before arriving, since the generation cannot advance until this sub-task has arrived
+		int arrivalGeneration = generation;
+
+		int child = relativeID;
+		for (int level = 0; level < nodes.length; level++) {
+			int node = child / fanIn;
+			AtomicInteger counter = nodes[level][node];
+			if (counter.incrementAndGet() < expectedArrivals[level][node]) {
+				awaitAdvance(arrivalGeneration);
+				return;
+			}
+			//-- last arrival at this node, nobody else touches it until the generation advances
+			counter.set(0);
+			child = node;
+		}
+
+		//-- last arrival at the root
+		generation = arrivalGeneration + 1;
+		Thread parked;
+		while ((parked = parkedThreads.poll()) != null)
+			LockSupport.unpark(parked);
+	}
+
+	private void awaitAdvance(int arrivalGeneration) {
+		Thread current = Thread.currentThread();
+		WorkerThread worker = current instanceof WorkerThread ? (WorkerThread) current : null;
+		int spins = SPINS;
+		boolean registered = false;
+
+		while (generation == arrivalGeneration) {
+			if (worker != null && worker.executeAnotherTask()) {
+				//-- keep executing other tasks (possibly sibling sub-tasks) until all sub-tasks have arrived
+				spins = SPINS;
+			} else if (spins > 0) {
+				spins--;
+			} else if (!registered) {
+				//-- re-check the generation before parking, in case it advanced while registering
+				parkedThreads.add(current);
+				registered = true;
+			} else {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+		}
+	}
+}
@@ -21,6 +21,7 @@ package pt.runtime;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 
 import org.omg.CORBA.PUBLIC_MEMBER;
 
@@ -59,10 +60,13 @@ public class ParaTask {
 	private static ScheduleType scheduleType = ScheduleType.MixedSchedule;
 	private static boolean isInitialized = false;
 	private static boolean paraTaskStartedWorking = false;
+	private static InteractiveThreadType interactiveThreadType = InteractiveThreadType.PLATFORM;
+	private static PipelineExecutionType pipelineExecutionType = PipelineExecutionType.THREAD;
 
 
 	private static Thread EDT = null;		// a reference to the EDT
-	private static AbstractTaskListener listener;	// the EDT task listener
+	private static volatile AbstractTaskListener listener;	// the task listener executing the slots
+	private static Boolean headless = null;		// null until set explicitly or detected
 	
 	static long WORKER_SLEEP_DELAY = 200;
 	static long INTERACTIVE_SLEEP_DELAY = 60000;
@@ -72,10 +76,41 @@ public class ParaTask {
 		
 	}
 	
+	/**
+	 * Returns the GUI event dispatch thread, or <code>null</code> if ParaTask runs in headless mode.
+	 * @see #isHeadless()
+	 */
 	public static Thread getEDT() {
 		return EDT;
 	}
 	
+	/**
+	 * Set whether ParaTask runs in headless mode, i.e. without a GUI. In headless mode, ParaTask never loads the AWT or
+	 * Swing classes, there is no event dispatch thread, and no thread is ever considered to be the event dispatch thread.
+	 * By default, ParaTask runs in headless mode if the <code>java.awt.headless</code> system property is <code>true</code>.
+	 * This only has an effect if ParaTask has not been initialised yet. 
+	 * 
+	 * @param headless	<code>true</code> to run without a GUI, <code>false</code> to use the GUI event dispatch thread.
+	 * @return boolean <code>true</code> if the mode is changed successfully, <code>false</code> if ParaTask has already been initialised.
+	 */
+	public static synchronized boolean setHeadless(boolean headless) {
+		if (isInitialized())
+			return false;
+		ParaTask.headless = headless;
+		return true;
+	}
+	
+	/**
+	 * Checks whether ParaTask runs in headless mode.
+	 * @return	<code>true</code> if ParaTask runs without a GUI, <code>false</code> otherwise.
+	 * @see #setHeadless(boolean)
+	 */
+	public static synchronized boolean isHeadless() {
+		if (headless == null)
+			headless = Boolean.getBoolean("java.awt.headless");
+		return headless;
+	}
+	
 	/**
 	 * 
 	 * Enum representing the possible schedules that ParaTask supports.
@@ -140,6 +175,38 @@ public class ParaTask {
 	public static enum ThreadPoolType{
 	    	ALL, ONEOFF, MULTI
 	 }	
+	
+	/**
+	 * Enum representing the kinds of threads that interactive tasks (<code>IO_TASK</code>) may be executed on.
+	 */
+	public static enum InteractiveThreadType {
+		/**
+		 * Each interactive task is executed on a (cached) platform <code>InteractiveThread</code>.
+		 */
+		PLATFORM,
+		
+		/**
+		 * Each interactive task is executed on its own virtual thread. Only available from Java 21.
+		 */
+		VIRTUAL
+	}
+	
+	/**
+	 * Enum representing the ways that pipeline stages may be executed.
+	 */
+	public static enum PipelineExecutionType {
+		/**
+		 * Each pipeline stage is executed by its own thread.
+		 */
+		THREAD,
+		
+		/**
+		 * Pipeline stages are executed on the worker threads, a quantum of elements at a time, whenever their inputs 
+		 * have elements. Stages reading from a <code>BlockingQueue</code> (rather than from another stage) are still 
+		 * executed by their own thread.
+		 */
+		WORKER
+	}
 		
 		
 	static void paraTaskStarted(boolean started){
@@ -188,6 +255,246 @@ public class ParaTask {
     	return init(scheduleType);
     }
     
+    /**
+     * Set the kind of thread that interactive tasks are executed on. This only has an effect if no tasks have 
+     * been executed yet. This method returns <code>false</code> if ParaTask has already started working, or if
+     * <code>VIRTUAL</code> is requested but the JVM does not support virtual threads.
+     * 
+     * @param type The kind of thread to use for interactive tasks.
+     * @return boolean <code>true</code> if the interactive thread type is changed successfully, otherwise <code>false</code>.
+     */
+    public static boolean setInteractiveThreadType(InteractiveThreadType type) {
+    	if (paraTaskStarted())
+    		return false;
+    	if (type == InteractiveThreadType.VIRTUAL && !VirtualInteractiveTask.isSupported())
+    		return false;
+    	interactiveThreadType = type;
+    	return true;
+    }
+    
+    /**
+     * Set how pipeline stages are executed. By default, each stage is executed by its own thread. This only has an 
+     * effect if no tasks have been executed yet, and returns <code>false</code> otherwise.
+     * 
+     * @param type The way to execute pipeline stages.
+     * @return boolean <code>true</code> if the pipeline execution type is changed successfully, otherwise <code>false</code>.
+     * @see #setPipelineQuantum(int)
+     */
+    public static boolean setPipelineExecutionType(PipelineExecutionType type) {
+    	if (paraTaskStarted())
+    		return false;
+    	pipelineExecutionType = type;
+    	return true;
+    }
+    
+    /**
+     * Set the maximum number of elements that a pipeline stage processes on a worker thread before it yields the worker 
+     * to other tasks (see {@link PipelineExecutionType#WORKER}). The default is 64. This may be changed at any time.
+     * 
+     * @param elements	The maximum number of elements processed per quantum.
+     */
+    public static void setPipelineQuantum(int elements) {
+    	PipelineStage.setQuantum(elements);
+    }
+    
+    /**
+     * Returns the maximum number of elements that a pipeline stage processes on a worker thread before it yields.
+     * @return	The maximum number of elements processed per quantum.
+     * @see #setPipelineQuantum(int)
+     */
+    public static int getPipelineQuantum() {
+    	return PipelineStage.getQuantum();
+    }
+    
+    /**
+     * Set the maximum number of elements that a pipeline stage takes from its input queues at a time. The elements are
+     * drained from each queue in one go, and the results of all of them are written to the output queues in one go, 
+     * so the queues are locked once per batch rather than once per element. Only elements that are already in the
+     * queues are taken, so a stage never waits for a batch to fill up. The default is 64, and 1 transfers elements 
+     * one at a time. This may be changed at any time, and does not apply to stages annotated with {@link PipelineBatch}.
+     * 
+     * @param elements	The maximum number of elements transferred at a time.
+     */
+    public static void setPipelineBatchSize(int elements) {
+    	PipelineStage.setBatchSize(elements);
+    }
+    
+    /**
+     * Returns the maximum number of elements that a pipeline stage takes from its input queues at a time.
+     * @return	The maximum number of elements transferred at a time.
+     * @see #setPipelineBatchSize(int)
+     */
+    public static int getPipelineBatchSize() {
+    	return PipelineStage.getBatchSize();
+    }
+
+    /**
+     * Set the default capacity of the queues between pipeline stages, and what happens to the results of a stage once
+     * a queue is full. By default, the queues are not limited, so a stage producing elements faster than the stage
+     * after it consumes them fills up the memory. This may be changed at any time, but only applies to stages started
+     * afterwards, and not to stages annotated with {@link PipelineCapacity}.
+     *
+     * @param capacity	The maximum number of elements waiting in a queue.
+     * @param overflow	What happens once a queue is full.
+     */
+    public static void setPipelineQueueCapacity(int capacity, PipelineCapacity.Overflow overflow) {
+    	PipelineStage.setQueueCapacity(capacity, overflow);
+    }
+
+    /**
+     * Returns the default capacity of the queues between pipeline stages.
+     * @return	The maximum number of elements waiting in a queue.
+     * @see #setPipelineQueueCapacity(int, PipelineCapacity.Overflow)
+     */
+    public static int getPipelineQueueCapacity() {
+    	return PipelineStage.getQueueCapacity();
+    }
+
+    /**
+     * Returns what happens to the results of a pipeline stage once a queue is full, unless specified otherwise.
+     * @return	The default overflow of the queues.
+     * @see #setPipelineQueueCapacity(int, PipelineCapacity.Overflow)
+     */
+    public static PipelineCapacity.Overflow getPipelineQueueOverflow() {
+    	return PipelineStage.getQueueOverflow();
+    }
+    
+    /**
+     * Set the maximum number of platform threads used to execute interactive tasks. Once this many interactive
+     * threads are busy, further interactive tasks are queued until a thread becomes available. By default the number
+     * of interactive threads is not limited. Unlike the worker thread pools, this may be changed at any time.
+     * <br><br>
+     * Note that interactive tasks that wait for queued interactive tasks may deadlock when the limit is reached.
+     * 
+     * @param size	The maximum number of interactive threads.
+     * @see #setInteractiveThreadKeepAlive(long, TimeUnit)
+     */
+    public static void setInteractiveThreadPoolSize(int size) {
+    	InteractiveThreadPool.setMaximumPoolSize(size);
+    }
+    
+    /**
+     * Returns the maximum number of platform threads used to execute interactive tasks.
+     * @return	The maximum number of interactive threads.
+     */
+    public static int getInteractiveThreadPoolSize() {
+    	return InteractiveThreadPool.getMaximumPoolSize();
+    }
+    
+    /**
+     * Set how long an idle interactive thread is kept alive for reuse before it retires. The default is 60 seconds.
+     * 
+     * @param time	The keep-alive time.
+     * @param unit	The unit of <code>time</code>.
+     */
+    public static void setInteractiveThreadKeepAlive(long time, TimeUnit unit) {
+    	InteractiveThreadPool.setKeepAliveTime(time, unit);
+    }
+    
+    /**
+     * Set the multi-task size from which {@link CurrentTask#barrier()} counts arrivals in a combining tree, rather than 
+     * in a single counter shared by all sub-tasks. The default is 64. Use <code>Integer.MAX_VALUE</code> to always use
+     * a single counter. Only affects barriers that are first used after this call.
+     * 
+     * @param threshold	The smallest multi-task size that uses a combining tree.
+     */
+    public static void setBarrierCombiningThreshold(int threshold) {
+    	MultiTaskBarrier.setCombiningThreshold(threshold);
+    }
+    
+    /**
+     * Set the task listener that executes the slots of tasks (i.e. the methods of <code>notify</code>, 
+     * <code>notifyInterim</code> and <code>asyncCatch</code> clauses). By default, slots are executed on the GUI event
+     * dispatch thread if a GUI is present (see {@link GuiEdtTaskListener}), and on a dedicated thread otherwise
+     * (see {@link ExecutorTaskListener}), so that slots are never executed concurrently. Use {@link WorkerTaskListener} to execute slots on the thread completing 
+     * the task, or an {@link ExecutorTaskListener} to execute them on an application's <code>Executor</code>.
+     * <br><br>
+     * This may be changed at any time, and only affects slots that are executed after this call.
+     * 
+     * @param taskListener	The task listener to use, or <code>null</code> to restore the default.
+     */
+    public static void setTaskListener(AbstractTaskListener taskListener) {
+    	listener = taskListener != null ? taskListener : defaultTaskListener();
+    }
+    
+    /**
+     * Set the maximum number of slots that the GUI event dispatch thread executes in one go (see {@link GuiEdtTaskListener}).
+     * Slots are queued and executed in batches of at most this size, and other GUI events are handled in between batches. 
+     * The default is 64. This may be changed at any time.
+     * 
+     * @param max	The maximum number of slots executed per batch.
+     */
+    public static void setMaxSlotsPerEDTDrain(int max) {
+    	GuiEdtTaskListener.setMaxSlotsPerDrain(max);
+    }
+    
+    /**
+     * Returns the maximum number of slots that the GUI event dispatch thread executes in one go.
+     * @return	The maximum number of slots executed per batch.
+     * @see #setMaxSlotsPerEDTDrain(int)
+     */
+    public static int getMaxSlotsPerEDTDrain() {
+    	return GuiEdtTaskListener.getMaxSlotsPerDrain();
+    }
+    
+    /**
+     * Set whether a task with slots (i.e. a <code>notify</code> or <code>asyncCatch</code> clause) is set as complete as 
+     * soon as the task itself returns, rather than once its slots have been executed. 
+     * <br><br>
+     * By default, the slots are executed first, followed by a final slot that sets the task as complete. Therefore, dependent
+     * tasks (and {@link TaskID#hasCompleted()}) wait until the task listener (e.g. a busy event dispatch thread) has executed
+     * the slots. When set to <code>true</code>, dependent tasks, waiting threads and completion stages are released 
+     * immediately, while the slots are still executed in order by the task listener. The slots then run concurrently with 
+     * the tasks that depend on the task. This may be changed at any time, and affects tasks that complete after this call.
+     * 
+     * @param beforeSlots	<code>true</code> to set tasks as complete before their slots are executed.
+     */
+    public static void setCompleteBeforeSlots(boolean beforeSlots) {
+    	TaskID.setCompleteBeforeSlots(beforeSlots);
+    }
+    
+    /**
+     * Checks whether tasks with slots are set as complete before their slots are executed.
+     * @return	<code>true</code> if tasks are set as complete before their slots are executed.
+     * @see #setCompleteBeforeSlots(boolean)
+     */
+    public static boolean isCompleteBeforeSlots() {
+    	return TaskID.isCompleteBeforeSlots();
+    }
+    
+    /**
+     * Returns the task listener that executes the slots of tasks.
+     * @return	The task listener being used.
+     * @see #setTaskListener(AbstractTaskListener)
+     */
+    public static AbstractTaskListener getTaskListener() {
+    	if (listener == null)
+    		init();
+    	return listener;
+    }
+    
+    private static AbstractTaskListener defaultTaskListener() {
+    	if (GuiThread.isGuiPresent())
+    		return new GuiEdtTaskListener();
+    	return new ExecutorTaskListener(1);
+    }
+    
+    /**
+     * Returns the kind of thread that interactive tasks are executed on.
+     * @return		The interactive thread type being used.
+     */
+    public static InteractiveThreadType getInteractiveThreadType() {
+    	return interactiveThreadType;
+    }
+    
+    /**
+     * Returns how pipeline stages are executed.
+     * @return		The pipeline execution type being used.
+     */
+    public static PipelineExecutionType getPipelineExecutionType() {
+    	return pipelineExecutionType;
+    }
+    
     /**
      * Returns the schedule being used in the runtime.  
      * @return		The schedule being used.
@@ -236,8 +543,10 @@ public class ParaTask {
 			return false;
 		
 		isInitialized = false;
+		boolean headless = isHeadless();
 		while(!isInitialized){
-			GuiThread.init();
+			if (!headless)
+				GuiThread.init();
 		
 			try {
 				ParaTaskHelper.setCompleteSlot = 
@@ -255,8 +564,9 @@ public class ParaTask {
 			TaskpoolFactory.getTaskpool();
 			
 			//-- initialize the EDT
-			EDT = GuiThread.getEventDispatchThread();
-			listener = new GuiEdtTaskListener();
+			EDT = headless ? null : GuiThread.getEventDispatchThread();
+			if (listener == null)
+				listener = defaultTaskListener();
 			isInitialized = true;
 //			System.out.println("ParaTask.init EDT id: " + EDT.getId() + " EDT name: " + EDT.getName());
 		}
@@ -264,7 +574,7 @@ public class ParaTask {
 	}
 	
 	static AbstractTaskListener getEDTTaskListener() {
-		if (EDT == null) {
+		if (listener == null) {
 			throw new RuntimeException("Please call ParaTask.init() early in the main method of your application!");
 		}
 		return listener;
@@ -137,12 +137,7 @@ public class ParaTaskHelper {
 	 * [This is only intended for internal use of the ParaTask compiler and runtime]
 	 */
 	static public boolean isSubClassOf(Class child, Class potentialParent) {
-		try {
-			child.asSubclass(potentialParent);
-			return true;
-		} catch (ClassCastException e) {
-			return false;
-		}
+		return potentialParent.isAssignableFrom(child);
 	}
 	
 	/*
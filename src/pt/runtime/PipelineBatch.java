@@ -0,0 +1,54 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a pipeline stage that processes a batch of elements per invocation, rather than a single element. Annotate the 
+ * <code>TASK</code> method (after the <code>TASK</code> keyword), for example:
+ * <br><br>
+ * <code>TASK @PipelineBatch(maxSize = 256) List&lt;Integer&gt; parse(List&lt;String&gt; lines) { ... }</code>
+ * <br><br>
+ * Each parameter fed by a queue then receives a <code>java.util.List</code> of up to <code>maxSize</code> elements, 
+ * taken from that queue in order (when a stage has several such parameters, all lists have the same size). The stage 
+ * returns a <code>Collection</code> (or an array, or <code>null</code> for no elements), whose elements are written 
+ * one by one to the queues of the stages after it. Those stages may therefore process either single elements or 
+ * batches again. 
+ * <br><br>
+ * Note that the parameters and the result of such a stage are declared as collections, while the queues between stages
+ * hold single elements. Passing a queue (or the <code>TaskID</code> of a stage) of single elements to such a stage, or 
+ * passing its <code>TaskID</code> to a stage expecting single elements, therefore needs a cast to the raw 
+ * <code>BlockingQueue</code> or <code>TaskID</code> type.
+ * 
+ * @see ParaTask#setPipelineBatchSize(int)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface PipelineBatch {
+	
+	/**
+	 * The maximum number of elements passed per invocation.
+	 */
+	int maxSize() default 64;
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the number of results of a pipeline stage waiting in its output queues, i.e. in the queue to each stage after 
+ * it (or returned by {@link TaskID#getOutputQueue()}). Annotate the <code>TASK</code> method of the producing stage 
+ * (after the <code>TASK</code> keyword), for example:
+ * <br><br>
+ * <code>TASK @PipelineCapacity(capacity = 1000) Image load(File file) { ... }</code>
+ * <br><br>
+ * The capacity is a property of the producing stage, since its output queues may be created (and filled) before the 
+ * stages after it have started. Without this annotation, the output queues have the default capacity (see
+ * {@link ParaTask#setPipelineQueueCapacity(int, Overflow)}), which is not limited unless changed.
+ * <br><br>
+ * A stage taking elements from several queues pairs up the elements of the queues in order, so the queues to such a 
+ * stage must not drop elements: if one of them has the overflow <code>DROP_NEWEST</code> or <code>DROP_OLDEST</code>, 
+ * the stage fails when it starts (see {@link TaskID#getException()}), and cancels the stages after it.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface PipelineCapacity {
+
+	/**
+	 * What happens to the elements produced for a queue that is full.
+	 */
+	public static enum Overflow {
+		/**
+		 * The stage producing the elements stops taking elements of its own until the queue has space again. A stage
+		 * executed by its own thread parks, and a stage executed on the worker threads is not scheduled, so no worker
+		 * is blocked. The stage does not wait for a queue that no stage (nor {@link TaskID#getOutputQueue()}) has 
+		 * asked for yet.
+		 * <br><br>
+		 * The capacity is checked before a batch of elements is taken, not while its results are written, so the queue
+		 * may exceed its capacity. Every replica of the stage (see {@link PipelineReplicated}) checks on its own, and
+		 * then writes all the results of its batch, i.e. up to the batch size (see 
+		 * {@link ParaTask#setPipelineBatchSize(int)}) per replica. A replicated stage preserving the order also writes
+		 * the results it has held back for an earlier batch at the same time. A {@link PipelineBatch} stage may return
+		 * any number of results for a batch, so its queues are not limited beyond taking no more batches once full.
+		 */
+		BLOCK,
+
+		/**
+		 * Elements written while the queue is full are discarded.
+		 */
+		DROP_NEWEST,
+
+		/**
+		 * The oldest elements of the queue are discarded to make space, so the consuming stage samples the most recent
+		 * elements if it cannot keep up.
+		 */
+		DROP_OLDEST
+	}
+
+	/**
+	 * The maximum number of elements waiting in each output queue.
+	 */
+	int capacity();
+
+	/**
+	 * What happens once an output queue is full.
+	 */
+	Overflow overflow() default Overflow.BLOCK;
+}
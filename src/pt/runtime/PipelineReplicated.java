@@ -0,0 +1,55 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a pipeline stage that may be executed by several threads (or worker quanta) at once, so that a slow stage does 
+ * not limit the throughput of the whole pipeline. Annotate the <code>TASK</code> method (after the <code>TASK</code> 
+ * keyword), for example:
+ * <br><br>
+ * <code>TASK @PipelineReplicated(degree = 4) Image resize(Image image) { ... }</code>
+ * <br><br>
+ * The stage must be stateless, or at least thread-safe, since its replicas invoke the method concurrently. The elements
+ * of the input queues are spread over the replicas in batches (see {@link ParaTask#setPipelineBatchSize(int)}). Unless 
+ * <code>preserveOrder</code> is <code>false</code>, the results are still written to the queues of the stages after 
+ * this one in the order of the inputs.
+ * 
+ * @see PipelineBatch
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface PipelineReplicated {
+	
+	/**
+	 * The number of replicas, or 0 for as many replicas as there are processors.
+	 */
+	int degree() default 0;
+	
+	/**
+	 * Whether the results are written in the order of the inputs. Otherwise, each replica writes its results as soon as 
+	 * it has them.
+	 */
+	boolean preserveOrder() default true;
+}
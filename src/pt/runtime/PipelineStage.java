@@ -0,0 +1,769 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen, Jonathan Chow
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import pt.queues.PipelineQueue;
+
+/**
+ * A stage of a pipeline, i.e. a task that is invoked once per element of its input queues, and whose results are
+ * written to the queues of the stages after it (see {@link TaskID#isPipeline()}).
+ * <br><br>
+ * A stage is either executed by its own {@link PipelineThread}, which waits until its inputs have an element, or (see
+ * {@link ParaTask.PipelineExecutionType#WORKER}) in quanta on the worker threads. In the latter case, the stage is
+ * enqueued as a one-off task whenever all its inputs have an element, and processes at most a quantum of elements
+ * (see {@link ParaTask#setPipelineQuantum(int)}) before it yields the worker to other tasks. This way, the number of
+ * threads stays fixed however many stages there are.
+ * <br><br>
+ * Only queues between stages (i.e. {@link PipelineQueue}s) notify the stage when an element is added. A stage reading
+ * from any other <code>BlockingQueue</code> is therefore always executed by its own thread.
+ * <br><br>
+ * Elements are transferred in batches: the stage drains up to a batch of the elements already in its input queues (see
+ * {@link ParaTask#setPipelineBatchSize(int)}), invokes the method for each of them (or once for all of them, see 
+ * {@link PipelineBatch}), and writes all the results to its output queues in one go.
+ * <br><br>
+ * A stage may be replicated (see {@link PipelineReplicated}), i.e. executed by several threads (or quanta) at once. The
+ * replicas take turns to take a batch from the input queues, but invoke the method and write the results concurrently.
+ * Each batch is numbered when it is taken, so that the results may be written in that order (i.e. in the order of
+ * the inputs). Results of a batch that complete before the results of an earlier batch are held back until then.
+ * <br><br>
+ * The output queues of a stage may have a capacity (see {@link PipelineCapacity}). A stage only takes a batch once
+ * every output queue that blocks when full has space, and is woken up (like for its inputs) once the stage after it
+ * has taken elements from a full queue. Once a stage has finished, its input queues are unregistered and cleared, so the
+ * stages before it neither wait for it nor fill up queues that are never consumed.
+ */
+class PipelineStage {
+
+	private static volatile int quantum = 64;
+	private static volatile int batchSize = 64;
+	private static volatile int queueCapacity = Integer.MAX_VALUE;
+	private static volatile PipelineCapacity.Overflow queueOverflow = PipelineCapacity.Overflow.BLOCK;
+
+	// how long to wait at a time for an element of an external queue, before checking for a cancel again
+	private static final long EXTERNAL_POLL_MILLIS = 100;
+
+	/*
+	 * 	Resolved once, since every quantum is executed through the same method.
+	 */
+	private static Method runQuantumMethod = null;
+
+	private final Taskpool taskpool;
+	private final TaskID task;
+	private final boolean onWorkers;
+
+	//-- the number of replicas, and whether their results are written in the order of the inputs
+	private final int degree;
+	private final boolean ordered;
+
+	//-- the capacity of the output queues, set on each one when it is created
+	private final int outputCapacity;
+	private final PipelineCapacity.Overflow outputOverflow;
+
+	//-- notified by the input queues when an element is added, and by the output queues when they have space again
+	private final Runnable wakeUpListener = new Runnable() {
+		@Override
+		public void run() {
+			wakeUp();
+		}
+	};
+
+	//-- the queues from the stages before this one (by argument index), claimed as soon as this stage is started
+	private PipelineQueue[] claimedQueues;
+
+	//-- set up by initialize(), since the results of arguments that are not pipeline stages may need to be waited for
+	private volatile boolean initialized = false;
+	private TaskInvoker invoker;
+	private Object instance;
+	private Object[] argsCopy;
+	private int[] combinedQueueArgIndexes;
+
+	//-- the maximum number of elements per invocation, or 0 if the stage processes single elements
+	private int batchStageSize = 0;
+
+	//-- guards taking elements from the input queues, and the following state
+	private final Object takeLock = new Object();
+
+	//-- elements already taken from external queues, by argument index
+	private Object[] lookahead;
+
+	private int elementsLeft = -1;
+	private long nextSequence = 0;
+	private volatile boolean finished = false;
+
+	private volatile boolean cancelRequested = false;
+
+	//-- results of batches that were processed before the results of earlier batches were written (only if ordered)
+	private final HashMap<Long, ArrayList<Object>> heldResults = new HashMap<Long, ArrayList<Object>>();
+	private long nextToWrite = 0;
+
+	//-- the thread waiting for the inputs, unless the stage is executed on the worker threads
+	private volatile Thread waitingThread = null;
+
+	//-- the number of threads executing the stage, or of quanta enqueued (or being executed)
+	private final AtomicInteger activeReplicas = new AtomicInteger(0);
+	private final AtomicBoolean childrenCancelled = new AtomicBoolean(false);
+
+	//-- (worker execution) the state of replicas that are not being executed, reused by the next quantum
+	private final ConcurrentLinkedQueue<Replica> idleReplicas = new ConcurrentLinkedQueue<Replica>();
+
+	/*
+	 * The state of a single replica of the stage, i.e. of a thread or a quantum currently executing the stage.
+	 */
+	private final class Replica {
+		final Object[] args = Arrays.copyOf(argsCopy, argsCopy.length);
+
+		//-- elements taken from the input queues for the current batch (by argument index), and their results
+		final ArrayList[] buffers = new ArrayList[argsCopy.length];
+		final ArrayList<Object> results = new ArrayList<Object>();
+		long sequence;
+
+		Replica() {
+			for (int index : combinedQueueArgIndexes)
+				buffers[index] = new ArrayList<Object>();
+		}
+	}
+
+	private PipelineStage(Taskpool taskpool, TaskID task, boolean onWorkers, int degree, boolean ordered,
+			int outputCapacity, PipelineCapacity.Overflow outputOverflow) {
+		this.taskpool = taskpool;
+		this.task = task;
+		this.onWorkers = onWorkers;
+		this.degree = degree;
+		this.ordered = ordered;
+		this.outputCapacity = outputCapacity;
+		this.outputOverflow = outputOverflow;
+	}
+
+	/**
+	 * Starts executing the specified pipeline stage, either on its own thread(s) or on the worker threads.
+	 */
+	static void start(Taskpool taskpool, TaskID task) {
+		TaskInfo info = task.getTaskInfo();
+		boolean onWorkers = ParaTask.getPipelineExecutionType() == ParaTask.PipelineExecutionType.WORKER
+				&& info.getQueueArgIndexes().length == 0;
+
+		int degree = 1;
+		boolean ordered = false;
+		PipelineReplicated replicated = info.getMethod().getAnnotation(PipelineReplicated.class);
+		if (replicated != null) {
+			degree = replicated.degree() > 0 ? replicated.degree() : Runtime.getRuntime().availableProcessors();
+			ordered = degree > 1 && replicated.preserveOrder();
+		}
+
+		int outputCapacity = queueCapacity;
+		PipelineCapacity.Overflow outputOverflow = queueOverflow;
+		PipelineCapacity capacity = info.getMethod().getAnnotation(PipelineCapacity.class);
+		if (capacity != null) {
+			outputCapacity = Math.max(1, capacity.capacity());
+			outputOverflow = capacity.overflow();
+		}
+
+		PipelineStage stage = new PipelineStage(taskpool, task, onWorkers, degree, ordered, outputCapacity, outputOverflow);
+		task.setPipelineStage(stage);
+
+		// the stages before this one only wait for space in the queues once this stage has claimed them
+		stage.claimInputQueues(info);
+
+		if (onWorkers) {
+			stage.activeReplicas.set(1);
+			stage.enqueueQuantum();
+		} else {
+			stage.startThread();
+		}
+	}
+
+	static void setQuantum(int elements) {
+		if (elements < 1)
+			throw new IllegalArgumentException("Pipeline quantum must be at least 1, not " + elements);
+		quantum = elements;
+	}
+
+	static int getQuantum() {
+		return quantum;
+	}
+
+	static void setBatchSize(int elements) {
+		if (elements < 1)
+			throw new IllegalArgumentException("Pipeline batch size must be at least 1, not " + elements);
+		batchSize = elements;
+	}
+
+	static int getBatchSize() {
+		return batchSize;
+	}
+
+	static void setQueueCapacity(int capacity, PipelineCapacity.Overflow overflow) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Pipeline queue capacity must be at least 1, not " + capacity);
+		if (overflow == null)
+			throw new IllegalArgumentException("Pipeline queue overflow must not be null");
+		queueCapacity = capacity;
+		queueOverflow = overflow;
+	}
+
+	static int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	static PipelineCapacity.Overflow getQueueOverflow() {
+		return queueOverflow;
+	}
+
+	String getName() {
+		return task.getTaskInfo().getMethod().getName();
+	}
+
+	/**
+	 * Called when a stage before this one has been cancelled (or has finished).
+	 */
+	void cancel() {
+		cancelRequested = true;
+		wakeUp();
+	}
+
+	/**
+	 * Sets the capacity of a new output queue of this stage, which wakes up this stage once it has space again.
+	 */
+	void configureOutputQueue(PipelineQueue queue) {
+		queue.setCapacity(outputCapacity, outputOverflow);
+		queue.setSpaceListener(wakeUpListener);
+	}
+
+	private void wakeUp() {
+		if (onWorkers)
+			scheduleIfRunnable();
+		else
+			LockSupport.unpark(waitingThread);
+	}
+
+	private void startThread() {
+		activeReplicas.incrementAndGet();
+		new PipelineThread(taskpool, this).start();
+	}
+
+	/*
+	 * Executes the stage until it has finished (only for stages executed by their own threads).
+	 */
+	void runOnThread() {
+		boolean first = false;
+		synchronized (takeLock) {
+			if (!initialized) {
+				initialize();
+				first = true;
+			}
+		}
+
+		// the other replicas are only started once the stage has been initialized
+		if (first) {
+			for (int i = 1; i < degree; i++)
+				startThread();
+		}
+
+		Replica replica = new Replica();
+		int n;
+		while ((n = take(replica, Integer.MAX_VALUE, true)) > 0)
+			process(replica, n);
+
+		replicaFinished();
+	}
+
+	/*
+	 * Executes at most a quantum of elements (only for stages executed on the worker threads). Invoked reflectively as
+	 * the method of a one-off task.
+	 */
+	void runQuantum() {
+		if (!initialized) {
+			synchronized (takeLock) {
+				if (!initialized)
+					initialize();
+			}
+		}
+
+		Replica replica = idleReplicas.poll();
+		if (replica == null)
+			replica = new Replica();
+
+		int processed = 0;
+		int limit = quantum;
+		int n = 0;
+		while (processed < limit && (n = take(replica, limit - processed, false)) > 0) {
+			// other replicas may process the remaining elements in the meantime
+			if (degree > 1)
+				scheduleIfRunnable();
+
+			process(replica, n);
+			processed += n;
+		}
+		idleReplicas.add(replica);
+
+		if (n > 0) {
+			//-- yield to other tasks, but remain scheduled
+			enqueueQuantum();
+		} else {
+			replicaFinished();
+
+			//-- an element may have been added (or a cancel requested) after the inputs were checked
+			scheduleIfRunnable();
+		}
+	}
+
+	/*
+	 * Called when a thread (or quantum) stops executing the stage. Once the stage has finished, the last one cancels
+	 * the stages after this one, since all the results have been written by then.
+	 */
+	private void replicaFinished() {
+		if (activeReplicas.decrementAndGet() == 0 && finished && childrenCancelled.compareAndSet(false, true)) {
+			releaseInputQueues();
+
+			// finished! send cancel to child tasks
+			task.cancelChildTasks();
+		}
+	}
+
+	/*
+	 * Unregisters the input queues from the stages before this one, which may still be producing elements, and discards
+	 * the elements that will never be taken.
+	 */
+	private void releaseInputQueues() {
+		for (int index : combinedQueueArgIndexes) {
+			if (argsCopy[index] instanceof PipelineQueue) {
+				PipelineQueue queue = (PipelineQueue) argsCopy[index];
+				TaskID head = queue.getHeadTask();
+				if (head != null)
+					head.unregisterOutputQueue(queue);
+
+				// also wakes up the stage before this one if it was waiting for space
+				queue.clear();
+			}
+		}
+	}
+
+	private void scheduleIfRunnable() {
+		// until then, the first quantum will check the inputs
+		if (!initialized)
+			return;
+
+		while (!finished && (cancelRequested || (inputsReady() && task.outputQueuesHaveSpace()))) {
+			int active = activeReplicas.get();
+			if (active >= degree)
+				return;
+			if (activeReplicas.compareAndSet(active, active + 1)) {
+				enqueueQuantum();
+				return;
+			}
+		}
+	}
+
+	private void enqueueQuantum() {
+		TaskInfo taskinfo = new TaskInfo();
+		taskinfo.setMethod(getRunQuantumMethod());
+		taskinfo.setInstance(this);
+		taskpool.enqueue(taskinfo);
+	}
+
+	private static Method getRunQuantumMethod() {
+		if (runQuantumMethod == null) {
+			try {
+				runQuantumMethod = PipelineStage.class.getDeclaredMethod("runQuantum");
+			} catch (NoSuchMethodException e) {
+				throw new ParaTaskRuntimeException("Could not resolve PipelineStage.runQuantum()");
+			}
+		}
+		return runQuantumMethod;
+	}
+
+	private void claimInputQueues(TaskInfo info) {
+		Object[] args = info.getParameters();
+		claimedQueues = new PipelineQueue[args.length];
+		for (int index : info.getTaskIdArgIndexes()) {
+			TaskID taskId = (TaskID) args[index];
+			if (taskId.isPipeline())
+				claimedQueues[index] = (PipelineQueue) taskId.getOutputQueue(task);
+		}
+	}
+
+	private void initialize() {
+		TaskInfo info = task.getTaskInfo();
+		instance = info.getInstance();
+		Object[] args = info.getParameters();
+
+		// replicas invoke the method concurrently, so they cannot share the arguments of a task call
+		if (degree > 1)
+			invoker = TaskInvoker.forMethod(info.getMethod());
+		else
+			invoker = info.getInvoker();
+
+		int[] taskIdArgIndexes = info.getTaskIdArgIndexes();
+		int[] queueArgIndexes = info.getQueueArgIndexes();
+
+		// some taskIDs may also be queues
+		List<Integer> combinedQueueArgIndexesList = new ArrayList<Integer>();
+		for (int index : queueArgIndexes) {
+			combinedQueueArgIndexesList.add(index);
+		}
+
+		// retrieve results from implicit taskids
+		// these only need to be retrieved once
+		for (int index : taskIdArgIndexes) {
+
+			TaskID taskId = (TaskID) args[index];
+
+			// if the dependent task is not a pipeline, block until result
+			if (!taskId.isPipeline()) {
+				try {
+					args[index] = ((TaskID) args[index]).getReturnResult();
+				} catch (InterruptedException e) {
+					// TODO: what happens?
+				} catch (ExecutionException e) {
+					// TODO: what happens?
+				}
+			}
+
+			// otherwise we replace taskid parameter with its output queue
+			else {
+				args[index] = claimedQueues[index];
+				combinedQueueArgIndexesList.add(index);
+			}
+		}
+
+		// we need to take a copy of the args to preserve:
+		// * references to queues that were passed as parameters
+		// * indexing for getting to the queues
+		argsCopy = Arrays.copyOf(args, args.length);
+
+		// unpack list into array for more efficient handling
+		combinedQueueArgIndexes = new int[combinedQueueArgIndexesList.size()];
+		for (int i = 0; i < combinedQueueArgIndexes.length; i++)
+			combinedQueueArgIndexes[i] = combinedQueueArgIndexesList.get(i);
+
+		lookahead = new Object[args.length];
+
+		// the elements of several input queues are paired up in order, which dropping elements would mix up
+		if (combinedQueueArgIndexes.length > 1) {
+			for (int index : combinedQueueArgIndexes) {
+				if (argsCopy[index] instanceof PipelineQueue
+						&& ((PipelineQueue) argsCopy[index]).getOverflow() != PipelineCapacity.Overflow.BLOCK) {
+					PipelineQueue queue = (PipelineQueue) argsCopy[index];
+					fail(new ParaTaskRuntimeException("The pipeline stage " + getName() + " takes elements from several queues, "
+							+ "which must block when full rather than drop elements (overflow " + queue.getOverflow() + ")"));
+					break;
+				}
+			}
+		}
+
+		PipelineBatch batch = info.getMethod().getAnnotation(PipelineBatch.class);
+		if (batch != null) {
+			Class<?> returnType = info.getMethod().getReturnType();
+			if (Collection.class.isAssignableFrom(returnType) || returnType.isArray())
+				batchStageSize = Math.max(1, batch.maxSize());
+			else
+				fail(new ParaTaskRuntimeException("The pipeline batch stage " + getName()
+						+ " must return a collection or an array of results, not " + returnType.getName()));
+		}
+
+		initialized = true;
+
+		// internal queues notify this stage when an element is added
+		for (int index : combinedQueueArgIndexes) {
+			if (argsCopy[index] instanceof PipelineQueue)
+				((PipelineQueue) argsCopy[index]).setReadinessListener(wakeUpListener);
+		}
+	}
+
+	/*
+	 * Fails the stage before it takes any element, so that it finishes (and cancels the stages after it) as soon as it
+	 * is executed. Only called by initialize().
+	 */
+	private void fail(ParaTaskRuntimeException e) {
+		if (elementsLeft == 0)
+			return;
+		e.printStackTrace();
+		task.setException(e);
+		elementsLeft = 0;
+	}
+
+	private boolean inputsReady() {
+		for (int index : combinedQueueArgIndexes) {
+			if (lookahead[index] == null && ((BlockingQueue) argsCopy[index]).isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Takes up to max elements from every input queue into the buffers of the replica, once every input queue has an 
+	 * element. Otherwise, either waits for the inputs (if wait is true) or returns 0. Returns -1 once the stage has
+	 * finished, and otherwise the number of elements taken from each queue.
+	 */
+	private int take(Replica replica, int max, boolean wait) {
+		synchronized (takeLock) {
+			while (elementsLeft != 0) {
+				boolean ready;
+				if (wait) {
+					// wait until every input queue has an element, or until a cancel is requested
+					ready = awaitInputs();
+				} else {
+					ready = !cancelRequested && inputsReady() && task.outputQueuesHaveSpace();
+					if (!ready && !cancelRequested)
+						return 0;
+				}
+
+				if (ready)
+					return drainInputs(replica, max);
+				else
+					processCancel();
+			}
+			finished = true;
+			return -1;
+		}
+	}
+
+	/*
+	 * Waits until every input queue has an element and every output queue has space (returns true), or until a cancel
+	 * is requested (returns false).
+	 * Internal queues (i.e. from other pipeline stages) unpark this thread when an element is added, so this thread
+	 * parks until then. External queues (e.g. a BlockingQueue passed to the stage) cannot notify this thread, so their
+	 * next element is taken in advance (into lookahead), waiting at most EXTERNAL_POLL_MILLIS at a time.
+	 */
+	private boolean awaitInputs() {
+		waitingThread = Thread.currentThread();
+		while (true) {
+			// check if we should stop this thread
+			if (cancelRequested)
+				return false;
+
+			int emptyIndex = -1;
+			for (int index : combinedQueueArgIndexes) {
+				if (lookahead[index] == null && ((BlockingQueue) argsCopy[index]).isEmpty()) {
+					emptyIndex = index;
+					break;
+				}
+			}
+			if (emptyIndex < 0) {
+				if (task.outputQueuesHaveSpace())
+					return true;
+
+				// woken up by a full output queue once the stage after this one has taken elements from it
+				LockSupport.park(this);
+			} else if (argsCopy[emptyIndex] instanceof PipelineQueue) {
+				// woken up by the queue, by cancel(), or spuriously (so check again)
+				LockSupport.park(this);
+			} else {
+				try {
+					lookahead[emptyIndex] = ((BlockingQueue) argsCopy[emptyIndex]).poll(EXTERNAL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					// theoretically can't happen
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Takes up to max elements from every input queue (each must have at least one). Only called with the takeLock.
+	 */
+	private int drainInputs(Replica replica, int max) {
+		int n = Math.min(max, batchStageSize > 0 ? batchStageSize : batchSize);
+		if (elementsLeft > 0)
+			n = Math.min(n, elementsLeft);
+
+		// only take as many elements as every input queue has, so the elements of the queues stay aligned
+		// and leave some of them for the other replicas
+		if (combinedQueueArgIndexes.length > 1 || degree > 1) {
+			int available = Integer.MAX_VALUE;
+			for (int index : combinedQueueArgIndexes)
+				available = Math.min(available, ((BlockingQueue) argsCopy[index]).size() + (lookahead[index] != null ? 1 : 0));
+			n = Math.max(1, Math.min(n, available / degree + (available % degree == 0 ? 0 : 1)));
+		}
+
+		// get objects from input queues, the takeLock is held so the elements are still there
+		for (int index : combinedQueueArgIndexes) {
+			ArrayList buffer = replica.buffers[index];
+			int wanted = n;
+			if (lookahead[index] != null) {
+				buffer.add(lookahead[index]);
+				lookahead[index] = null;
+				wanted--;
+			}
+			((BlockingQueue) argsCopy[index]).drainTo(buffer, wanted);
+		}
+		n = replica.buffers[combinedQueueArgIndexes[0]].size();
+		replica.sequence = nextSequence++;
+
+		// decrement elementsLeft if it is positive
+		// only decrement if we didn't do any cancel processing
+		if (elementsLeft > 0)
+			elementsLeft -= n;
+
+		return n;
+	}
+
+	/*
+	 * Invokes the stage with the n elements taken by the replica, and writes the results to the output queues.
+	 */
+	private void process(Replica replica, int n) {
+		Object[] args = replica.args;
+		ArrayList[] buffers = replica.buffers;
+
+		// execute the method
+		if (batchStageSize > 0) {
+			for (int index : combinedQueueArgIndexes) {
+				// the stage may keep the list, so it gets a new buffer
+				args[index] = buffers[index];
+				buffers[index] = new ArrayList<Object>();
+			}
+			addResults(replica.results, invoke(args));
+		} else {
+			for (int i = 0; i < n; i++) {
+				for (int index : combinedQueueArgIndexes)
+					args[index] = buffers[index].get(i);
+
+				Object result = invoke(args);
+				if (result != null)
+					replica.results.add(result);
+			}
+			for (int index : combinedQueueArgIndexes)
+				buffers[index].clear();
+		}
+
+		// write results to output queues
+		if (ordered)
+			writeInOrder(replica.sequence, replica.results);
+		else
+			task.writeAllToOutputQueues(replica.results);
+		replica.results.clear();
+	}
+
+	/*
+	 * Writes the results of a batch once the results of all earlier batches have been written.
+	 */
+	private void writeInOrder(long sequence, ArrayList<Object> results) {
+		synchronized (heldResults) {
+			if (sequence != nextToWrite) {
+				heldResults.put(sequence, new ArrayList<Object>(results));
+				return;
+			}
+
+			task.writeAllToOutputQueues(results);
+			nextToWrite++;
+
+			ArrayList<Object> next;
+			while ((next = heldResults.remove(nextToWrite)) != null) {
+				task.writeAllToOutputQueues(next);
+				nextToWrite++;
+			}
+		}
+	}
+
+	private Object invoke(Object[] args) {
+		try {
+			return invoker.invoke(instance, args);
+		} catch (IllegalAccessException e) {
+			// theoretically can't happen
+			e.printStackTrace();
+		} catch (IllegalArgumentException e) {
+			// theoretically can't happen
+			e.printStackTrace();
+		} catch (InvocationTargetException e) {
+			// TODO: handle exceptions from invoked method
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/*
+	 * Adds the elements of the result of a batch stage, i.e. of a collection or an array (see initialize()).
+	 */
+	private void addResults(List<Object> results, Object batchResult) {
+		if (batchResult == null)
+			return;
+
+		if (batchResult.getClass().isArray()) {
+			int length = Array.getLength(batchResult);
+			for (int i = 0; i < length; i++) {
+				Object result = Array.get(batchResult, i);
+				if (result != null)
+					results.add(result);
+			}
+		} else {
+			for (Object result : (Collection) batchResult) {
+				if (result != null)
+					results.add(result);
+			}
+		}
+	}
+
+	/*
+	 * Determines how many more elements to process once a stage before this one has been cancelled.
+	 */
+	private void processCancel() {
+		// check which parent queues are cancelled
+		// use cancelled queues to determine
+		int minElements = -1;
+		int maxElements = 0;
+		for (int i : combinedQueueArgIndexes) {
+			BlockingQueue queue = (BlockingQueue)argsCopy[i];
+			int queueSize = queue.size() + (lookahead[i] != null ? 1 : 0);
+
+			if (queueSize > maxElements)
+				maxElements = queueSize;
+
+			// see if this is an internal queue
+			if (queue instanceof PipelineQueue) {
+				PipelineQueue pQueue = (PipelineQueue)queue;
+
+				if ((pQueue.getHeadTask() == null || pQueue.getHeadTask().cancelledSuccessfully())
+						&& (minElements < 0 || queueSize < minElements)) {
+					minElements = queueSize;
+
+					// unregister the queue with the parent task so it gets no more updates
+					if (pQueue.getHeadTask() != null)
+						pQueue.getHeadTask().unregisterOutputQueue(pQueue);
+				}
+			}
+		}
+
+		// at this point, if minElements == -1 then no parent task was cancelled
+		// in other words, this is the first task to be cancelled
+		if (minElements >= 0) {
+			elementsLeft = minElements;
+		} else {
+			elementsLeft = maxElements;
+		}
+
+		// reset flag
+		cancelRequested = false;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * The common reductions of the results of a multi-task returning <code>int</code>, <code>long</code> or <code>double</code>, 
+ * which combine the results without boxing them (see {@link IntTaskIDGroup#reduceInt(IntBinaryOperator)}, 
+ * {@link LongTaskIDGroup#reduceLong(LongBinaryOperator)} and {@link DoubleTaskIDGroup#reduceDouble(DoubleBinaryOperator)}). 
+ * Each reduction applies to all three types, e.g. <code>group.reduceInt(PrimitiveReduction.SUM)</code>. Any other 
+ * (associative) operator may be used as well.
+ */
+public enum PrimitiveReduction implements IntBinaryOperator, LongBinaryOperator, DoubleBinaryOperator {
+	
+	SUM {
+		public int applyAsInt(int a, int b) { return a + b; }
+		public long applyAsLong(long a, long b) { return a + b; }
+		public double applyAsDouble(double a, double b) { return a + b; }
+	},
+	
+	PRODUCT {
+		public int applyAsInt(int a, int b) { return a * b; }
+		public long applyAsLong(long a, long b) { return a * b; }
+		public double applyAsDouble(double a, double b) { return a * b; }
+	},
+	
+	MIN {
+		public int applyAsInt(int a, int b) { return Math.min(a, b); }
+		public long applyAsLong(long a, long b) { return Math.min(a, b); }
+		public double applyAsDouble(double a, double b) { return Math.min(a, b); }
+	},
+	
+	MAX {
+		public int applyAsInt(int a, int b) { return Math.max(a, b); }
+		public long applyAsLong(long a, long b) { return Math.max(a, b); }
+		public double applyAsDouble(double a, double b) { return Math.max(a, b); }
+	};
+}
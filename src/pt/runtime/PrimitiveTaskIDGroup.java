@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The <code>TaskIDGroup</code> of a multi-task whose method returns a primitive type, which stores the result of each 
+ * sub-task in a primitive array indexed by relative ID (rather than as a boxed value in each sub-task's 
+ * <code>TaskID</code>). The results may then be read and reduced without boxing.
+ * <br><br>
+ * A sub-task compiled to a {@link TaskCall} is executed by this group (see {@link #invokeInnerTask(TaskID)}), which 
+ * calls the primitive-returning method of the <code>TaskCall</code> and stores the result straight into the array. Only
+ * tasks executed through a <code>Method</code> (e.g. created with {@link TaskInfo#setMethod(java.lang.reflect.Method)})
+ * box their results, which are then unboxed into the array.
+ * 
+ * @see IntTaskIDGroup
+ * @see LongTaskIDGroup
+ * @see DoubleTaskIDGroup
+ */
+abstract class PrimitiveTaskIDGroup<E> extends TaskIDGroup<E> {
+	
+	PrimitiveTaskIDGroup(int groupSize, TaskInfo taskInfo) {
+		super(groupSize, taskInfo);
+	}
+	
+	/**
+	 * Calls the method of a sub-task through its <code>TaskCall</code>, and stores the result at its relative ID.
+	 */
+	abstract void callAndStore(int relativeID, TaskCall call, Object instance) throws Throwable;
+	
+	/**
+	 * Stores a (boxed) result at the specified relative ID.
+	 */
+	abstract void store(int relativeID, E result);
+	
+	/**
+	 * Returns the (boxed) result at the specified relative ID.
+	 */
+	abstract E load(int relativeID);
+	
+	@Override
+	boolean invokeInnerTask(TaskID<?> innerTask) throws InvocationTargetException {
+		TaskInfo info = innerTask.getTaskInfo();
+		if (!info.hasTaskCall())
+			return false;
+		
+		try {
+			callAndStore(innerTask.relativeID(), info.getTaskCall(), info.getInstance());
+		} catch (Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+		return true;
+	}
+	
+	@Override
+	boolean storeInnerTaskResult(int relativeID, E result) {
+		store(relativeID, result);
+		return true;
+	}
+	
+	@Override
+	E loadInnerTaskResult(int relativeID, E result) {
+		return load(relativeID);
+	}
+	
+	/**
+	 * Waits for all the sub-tasks to complete before their results are reduced. 
+	 * @throws NoSuchElementException	If there are no results to reduce.
+	 */
+	void awaitResultsToReduce() throws ExecutionException, InterruptedException {
+		waitTillFinished();
+		if (groupSize() == 0)
+			throw new NoSuchElementException("Cannot reduce the results of a multi-task without sub-tasks");
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import pu.RedLib.Reduction;
+
+/**
+ * A reducer hyperobject, used by tasks to accumulate into a shared result without contention. 
+ * <br><br>
+ * Rather than updating a shared structure (and synchronising on it), each task updates its own <i>view</i> of the reducer
+ * (see {@link #view()}). Every worker thread lazily creates a private view, starting from the identity value, so tasks
+ * executed by the same worker accumulate into the same view without any synchronisation. The views are combined into
+ * the result when the multi-task that used them completes (i.e. before its slots are executed and before it is set as
+ * complete), or otherwise when the result is requested with {@link #get()}.
+ * <br><br>
+ * The combine operation must be associative. Since the views are not created in any particular order, it should also be
+ * commutative (e.g. adding histograms, sums or maps). A reducer may be used by several multi-tasks one after the other, 
+ * but not by two multi-tasks at the same time, as the completion of one would combine the views still used by the other.
+ * <br><br>
+ * For example, to build a histogram in a multi-task:
+ * <pre>
+ *  Reducer&lt;int[]&gt; histogram = new Reducer&lt;int[]&gt;(newHistogram, addHistograms);
+ *  
+ *  TASK(*) void count(Reducer&lt;int[]&gt; histogram) {
+ *      int[] myHistogram = histogram.view();
+ *      ...
+ *      myHistogram[bucket]++;
+ *  }
+ *  
+ *  count(histogram).waitTillFinished();
+ *  int[] result = histogram.get();
+ * </pre>
+ * 
+ * @param <T>	The type of the accumulated result
+ */
+public class Reducer<T> {
+	
+	private static final int INITIAL_WORKER_SLOTS = 16;
+	
+	private final Supplier<? extends T> identity;
+	private final Reduction<T> combiner;
+	
+	//-- the views of worker threads, indexed by thread ID (only grown while holding the lock on this reducer)
+	private volatile AtomicReferenceArray<View<T>> workerViews;
+	
+	//-- the views of threads that are not workers (e.g. interactive tasks, or the user's threads)
+	private final Map<Thread, View<T>> otherViews = new ConcurrentHashMap<Thread, View<T>>();
+	
+	private T result;
+	
+	private static class View<T> {
+		T value;
+		
+		View(T value) {
+			this.value = value;
+		}
+	}
+	
+	/**
+	 * Creates a reducer. 
+	 * @param identity	Creates the identity value, used as the initial result and as the initial value of every view
+	 * @param combiner	Combines two values (must be associative and commutative)
+	 */
+	public Reducer(Supplier<? extends T> identity, Reduction<T> combiner) {
+		this.identity = identity;
+		this.combiner = combiner;
+		this.result = identity.get();
+		this.workerViews = new AtomicReferenceArray<View<T>>(Math.max(INITIAL_WORKER_SLOTS, ThreadPool.getPoolSize(ParaTask.ThreadPoolType.ALL)));
+	}
+	
+	/**
+	 * Returns the current thread's view of this reducer, creating it (from the identity value) if necessary. Tasks 
+	 * executed by the same thread share the same view, so a task should only update its view while it executes. 
+	 * @return	The current thread's view
+	 * @see #setView(Object)
+	 */
+	public T view() {
+		return getView().value;
+	}
+	
+	/**
+	 * Replaces the current thread's view of this reducer. This is needed for immutable values, such as 
+	 * <code>Integer</code> sums.
+	 * @param value	The new view of the current thread
+	 */
+	public void setView(T value) {
+		getView().value = value;
+	}
+	
+	/**
+	 * Returns the result, after combining all the views that have not been combined yet. This should only be called once 
+	 * the tasks updating the views have completed.
+	 * @return	The combination of the identity value and all the views
+	 */
+	public synchronized T get() {
+		combineViews();
+		return result;
+	}
+	
+	private View<T> getView() {
+		TaskThread taskThread = TaskThread.currentTaskThread();
+		int slot = taskThread == null ? -1 : taskThread.getThreadID();
+		
+		View<T> view;
+		if (slot >= 0) {
+			AtomicReferenceArray<View<T>> views = workerViews;
+			view = slot < views.length() ? views.get(slot) : null;
+		} else {
+			view = otherViews.get(Thread.currentThread());
+		}
+		
+		if (view == null)
+			view = createView(slot, taskThread);
+		return view;
+	}
+	
+	private synchronized View<T> createView(int slot, TaskThread taskThread) {
+		View<T> view = new View<T>(identity.get());
+		if (slot >= 0) {
+			if (slot >= workerViews.length()) {
+				AtomicReferenceArray<View<T>> grown = new AtomicReferenceArray<View<T>>(Math.max(slot + 1, workerViews.length() * 2));
+				for (int i = 0; i < workerViews.length(); i++)
+					grown.set(i, workerViews.get(i));
+				workerViews = grown;
+			}
+			workerViews.set(slot, view);
+		} else {
+			otherViews.put(Thread.currentThread(), view);
+		}
+		
+		//-- combine the views when the enclosing multi-task completes
+		TaskID<?> task = taskThread == null || taskThread.currentTaskStack.isEmpty() ? null : taskThread.currentExecutingTask();
+		if (task != null && task.isMultiTask())
+			task.getGroup().registerReducer(this);
+		
+		return view;
+	}
+	
+	/**
+	 * Combines the views into the result, and removes them (so threads start with a new view the next time they use this 
+	 * reducer). Called when a multi-task that used this reducer completes.
+	 */
+	synchronized void combineViews() {
+		AtomicReferenceArray<View<T>> views = workerViews;
+		for (int slot = 0; slot < views.length(); slot++) {
+			View<T> view = views.getAndSet(slot, null);
+			if (view != null)
+				result = combiner.reduce(result, view.value);
+		}
+		for (Thread thread : otherViews.keySet()) {
+			View<T> view = otherViews.remove(thread);
+			if (view != null)
+				result = combiner.reduce(result, view.value);
+		}
+	}
+}
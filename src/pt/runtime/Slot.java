@@ -19,8 +19,17 @@
 
 package pt.runtime;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 /**
  *This class allows the user to define a handler from one of the Functor types (functional interfaces)
  * which could be done by using lambda expressions as well. The user-defined handler will be associated
@@ -29,6 +38,16 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * an instance of one of the Fucntors. 
  * <br><br>
  * This class also allows storing and retrieving the intermediate results of a taskID.
+ * <br><br>
+ * The invoker of the slot's method is resolved once, when the slot is created (see {@link TaskInvoker}), so that 
+ * executing the slot does not need to inspect the method again. Non-public methods are made accessible by the invoker. 
+ * If that is not permitted, the slot is instead always called through the <code>__pt__accessPrivateSlot</code> method 
+ * generated by the compiler.
+ * <br><br>
+ * Intermediate result slots deliver the interim results as specified by the {@link InterimDelivery} annotation of the 
+ * slot's method (if any), or by {@link #setInterimDelivery(InterimDelivery.Mode, long, int)}. Except for 
+ * <code>InterimDelivery.Mode.ALL</code>, at most one execution of the slot is pending at any time, whatever the number 
+ * of interim results published.
  * 
  * @author Mostafa Mehrabi
  * @since  4/9/2014
@@ -45,6 +64,18 @@ public class Slot {
 	private ConcurrentLinkedQueue<Object> interResults = null;
 	private Class interResultType = null;
 	
+	//-- how interim results are delivered (only used by intermediate result slots)
+	private InterimDelivery.Mode interimMode = InterimDelivery.Mode.ALL;
+	private long interimIntervalNanos = 0;
+	private int interimCapacity = Integer.MAX_VALUE;
+	private AtomicInteger queuedInterResults = null;
+	private AtomicReference<Object> latestInterResult = null;
+	private AtomicBoolean interimExecutionPending = null;
+	private volatile long lastInterimExecution = 0;
+	
+	//-- the execution scheduled by THROTTLED delivery, until either the timer or the completing task claims it (guarded by this slot) 
+	private ScheduledFuture<?> scheduledInterimExecution = null;
+	
 	private SetCompleteSlot isASetCompleteSlot = SetCompleteSlot.FALSE;
 	
 	private TaskID<?> taskID = null; 	// TODO this is the task for which this slot is attached to (who should assign it?)
@@ -52,6 +83,16 @@ public class Slot {
 	
 	private boolean isIntermediateResultSlot = false;
 	
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+	
+	//-- resolved when the slot is created
+	private TaskInvoker invoker = null;
+	private int parameterCount = 0;
+	
+	//-- only used (and looked up) if the method could not be made accessible
+	private boolean invokeThroughOpener = false;
+	private volatile TaskInvoker opener = null;
+	
 	private Slot() {
 	}
 	
@@ -59,6 +100,17 @@ public class Slot {
 		this.method = method;
 		this.instance = instance;
 		this.isIntermediateResultSlot = isIntermediateResultSlot;
+		if (method != null) {
+			invoker = TaskInvoker.forMethod(method);
+			invokeThroughOpener = !invoker.isAccessible();
+			parameterCount = method.getParameterTypes().length;
+		}
+		if (isIntermediateResultSlot) {
+			interResults = new ConcurrentLinkedQueue<Object>();
+			InterimDelivery delivery = method == null ? null : method.getAnnotation(InterimDelivery.class);
+			if (delivery != null)
+				setInterimDelivery(delivery.mode(), delivery.intervalMillis(), delivery.capacity());
+		}
 	}
 
 	public Slot(Method method, Object instance, boolean isIntermediateResultSlot, SetCompleteSlot isASetCompleteSlot) {
@@ -70,16 +122,151 @@ public class Slot {
 		return isASetCompleteSlot == SetCompleteSlot.TRUE;
 	}
 	
-	public void addIntermediateResult(Class type, Object value) {
-		if (interResults == null) {
-			interResults = new ConcurrentLinkedQueue<Object>();
+	/**
+	 * Sets how interim results are delivered to this (intermediate result) slot. This should be called before the task
+	 * publishes interim results.
+	 * 
+	 * @param mode				The delivery mode.
+	 * @param intervalMillis	The minimum time between executions of the slot (only used by <code>THROTTLED</code>).
+	 * @param capacity			The maximum number of queued interim results (only used by <code>BOUNDED</code>).
+	 * @see InterimDelivery
+	 */
+	public void setInterimDelivery(InterimDelivery.Mode mode, long intervalMillis, int capacity) {
+		if (!isIntermediateResultSlot)
+			throw new IllegalStateException("Trying to set the interim delivery of a slot that is not an intermediate result slot");
+		if (intervalMillis < 0)
+			throw new IllegalArgumentException("Negative interim delivery interval: " + intervalMillis);
+		if (capacity < 1)
+			throw new IllegalArgumentException("Trying to queue at most " + capacity + " interim results");
+		
+		interimMode = mode;
+		interimIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		interimCapacity = mode == InterimDelivery.Mode.BOUNDED ? capacity : Integer.MAX_VALUE;
+		if (mode != InterimDelivery.Mode.ALL) {
+			queuedInterResults = new AtomicInteger(0);
+			latestInterResult = new AtomicReference<Object>(null);
+			interimExecutionPending = new AtomicBoolean(false);
+		}
+	}
+	
+	public InterimDelivery.Mode getInterimDeliveryMode() {
+		return interimMode;
+	}
+	
+	/**
+	 * Adds an interim result to be delivered to this slot.
+	 * 
+	 * @return	<code>true</code> if the slot should now be executed (to deliver this or a later result), <code>false</code> if 
+	 * an execution is already pending, or (for <code>THROTTLED</code> delivery) has been scheduled.
+	 */
+	public boolean addIntermediateResult(Class type, Object value) {
+		if (interResultType == null)
 			interResultType = type;
+		
+		switch (interimMode) {
+		case LATEST:
+			latestInterResult.set(value);
+			return interimExecutionPending.compareAndSet(false, true);
+			
+		case THROTTLED:
+			latestInterResult.set(value);
+			if (!interimExecutionPending.compareAndSet(false, true))
+				return false;
+			long delay = lastInterimExecution + interimIntervalNanos - System.nanoTime();
+			if (delay <= 0) {
+				lastInterimExecution = System.nanoTime();
+				return true;
+			}
+			scheduleInterimExecution(delay);
+			return false;
+			
+		case BOUNDED:
+			interResults.add(value);
+			//-- drop the oldest result if the queue is full
+			if (queuedInterResults.incrementAndGet() > interimCapacity && interResults.poll() != null)
+				queuedInterResults.decrementAndGet();
+			return interimExecutionPending.compareAndSet(false, true);
+			
+		default:
+			interResults.add(value);
+			return true;
 		}
-		interResults.add(value);
 	}
 	
+	/**
+	 * Returns the interim result to deliver in this execution of the slot, or <code>null</code> if there is none (e.g. 
+	 * because it was already delivered by the previous execution).
+	 */
 	public Object getNextIntermediateResultValue() {
-		return interResults.poll();
+		switch (interimMode) {
+		case LATEST:
+		case THROTTLED:
+			//-- results published from now on need another execution
+			interimExecutionPending.set(false);
+			return latestInterResult.getAndSet(null);
+			
+		case BOUNDED:
+			interimExecutionPending.set(false);
+			Object value = interResults.poll();
+			if (value != null)
+				queuedInterResults.decrementAndGet();
+			
+			//-- the remaining results are delivered by the next execution
+			if (!interResults.isEmpty() && interimExecutionPending.compareAndSet(false, true))
+				ParaTask.getEDTTaskListener().executeSlot(this);
+			return value;
+			
+		default:
+			return interResults.poll();
+		}
+	}
+	
+	/*
+	 * Executes the slot once the interval has passed, with the latest result at that time, unless the task completes 
+	 * before (see cancelScheduledInterimExecution()).
+	 */
+	private synchronized void scheduleInterimExecution(long delayNanos) {
+		scheduledInterimExecution = InterimTimer.timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (Slot.this) {
+					if (scheduledInterimExecution == null)
+						return;
+					scheduledInterimExecution = null;
+					lastInterimExecution = System.nanoTime();
+					
+					//-- handed to the task listener before a completing task can hand over its final slots
+					ParaTask.getEDTTaskListener().executeSlot(Slot.this);
+				}
+			}
+		}, delayNanos, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Cancels the execution of this slot scheduled by <code>THROTTLED</code> delivery (if any), since the task has 
+	 * completed. The task then executes the slot with its final slots instead, so that the latest interim result is 
+	 * not delivered after the task has completed.
+	 * 
+	 * @return	<code>true</code> if an execution was cancelled, i.e. the task must execute the slot.
+	 */
+	synchronized boolean cancelScheduledInterimExecution() {
+		if (scheduledInterimExecution == null)
+			return false;
+		scheduledInterimExecution.cancel(false);
+		scheduledInterimExecution = null;
+		return true;
+	}
+	
+	//-- only created once a THROTTLED slot is first delayed
+	private static class InterimTimer {
+		static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ParaTask-InterimTimer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 	}
 	
 	public Class getIntermediateResultType() {
@@ -105,4 +292,47 @@ public class Slot {
 	public boolean isIntermediateResultSlot() {
 		return isIntermediateResultSlot;
 	}
+	
+	/**
+	 * Executes the slot's method, with the specified intermediate result (if it is an intermediate result slot).
+	 */
+	void invoke(Object interResult) throws IllegalAccessException, InvocationTargetException {
+		if (isASetCompleteSlot()) {
+			//-- invoke ParaTaskHelper.setComplete(instance).. where 'instance' is 
+			//--   the actual TaskID whose (non-public) setComplete() we want to execute  
+			invoker.invoke(null, new Object[] { instance });
+			return;
+		}
+		
+		if (invokeThroughOpener) {
+			invokeThroughOpener(interResult);
+			return;
+		}
+		
+		// the only argument a slot can have (if any) is a single TaskID that represents the task that completed
+		Object[] args;
+		if (parameterCount == 2)
+			args = new Object[] { taskID, interResult };
+		else if (parameterCount == 1)
+			args = new Object[] { taskID };
+		else
+			args = NO_ARGUMENTS;
+		
+		invoker.invoke(instance, args);
+	}
+	
+	private void invokeThroughOpener(Object interResult) throws IllegalAccessException, InvocationTargetException {
+		if (instance == null && Modifier.isStatic(method.getModifiers()))
+			throw new RuntimeException("Cannot use private static methods in clause: "+method);
+		
+		if (opener == null) {
+			try {
+				opener = TaskInvoker.forMethod(method.getDeclaringClass().getMethod("__pt__accessPrivateSlot", new Class[] { 
+						Method.class, Object.class, TaskID.class, Object.class }));
+			} catch (NoSuchMethodException e) {
+				throw new IllegalAccessException("Cannot access " + method + ": " + e);
+			}
+		}
+		opener.invoke(instance, new Object[] { method, instance, taskID, interResult });
+	}
 }
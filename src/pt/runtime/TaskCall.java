@@ -0,0 +1,201 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * [This is only intended for internal use of the ParaTask compiler and runtime]
+ * <br><br>
+ * The body of a <code>TASK</code> method and its arguments, as generated by the ParaTask compiler. The compiler generates
+ * one (static nested) subclass per <code>TASK</code> method, inside the class declaring the method. Every invocation of
+ * the task creates an instance of that subclass, which captures the arguments in fields of their declared (possibly
+ * primitive) types, and whose {@link #call(Object)} calls the <code>__pt__</code> method directly. The runtime therefore
+ * executes the task without reflection, and without boxing the arguments into an <code>Object[]</code>.
+ * <br><br>
+ * An implicit <code>TaskID</code> argument (i.e. a <code>TaskID</code> passed in place of its result) is kept aside
+ * (see {@link #setTaskIdArgument(int, TaskID)}), and its result is stored directly in the field of the argument once
+ * the task is about to execute.
+ * <br><br>
+ * The arguments are only boxed into an array when asked for (e.g. by {@link TaskID#getTaskArguments()} or by pipeline
+ * stages). Conversely, arguments that were set as an array (see {@link TaskInfo#setParameters(Object...)}) are copied
+ * into the fields before the method is called.
+ */
+public abstract class TaskCall {
+
+	/**
+	 * [This is only intended for internal use of the ParaTask compiler and runtime]
+	 * <br><br>
+	 * Describes the <code>__pt__</code> method called by a subclass of <code>TaskCall</code>. There is a single instance
+	 * per method, which looks up the <code>Method</code> (e.g. for the name of the task) the first time it is needed.
+	 */
+	public static final class Signature {
+
+		private final Class<?> callClass;
+		private final String methodName;
+		private final Class<?>[] parameterTypes;
+		private volatile Method method = null;
+
+		/**
+		 * @param callClass			The generated subclass of <code>TaskCall</code>, enclosed by the class declaring the method.
+		 * @param methodName		The name of the <code>__pt__</code> method.
+		 * @param parameterTypes	The parameter types of that method.
+		 */
+		public Signature(Class<? extends TaskCall> callClass, String methodName, Class<?>... parameterTypes) {
+			this.callClass = callClass;
+			this.methodName = methodName;
+			this.parameterTypes = parameterTypes;
+		}
+
+		int getParameterCount() {
+			return parameterTypes.length;
+		}
+
+		Method getMethod() {
+			if (method == null) {
+				synchronized (this) {
+					if (method == null) {
+						try {
+							method = ParaTaskHelper.getDeclaredMethod(callClass.getEnclosingClass(), methodName, parameterTypes);
+						} catch (NoSuchMethodException e) {
+							throw new ParaTaskRuntimeException("Could not resolve the method " + methodName + " of " + callClass.getEnclosingClass());
+						}
+					}
+				}
+			}
+			return method;
+		}
+	}
+
+	private final Signature signature;
+
+	//-- implicit TaskID arguments, by argument index (only allocated if there are any)
+	private TaskID<?>[] taskIdArguments = null;
+	private volatile boolean substituted = false;
+
+	protected TaskCall(Signature signature) {
+		this.signature = signature;
+	}
+
+	/**
+	 * Calls the method on the specified instance (ignored for static methods), with the captured arguments.
+	 */
+	protected abstract Object call(Object instance) throws Throwable;
+
+	/**
+	 * Same as {@link #call(Object)}, for a method returning <code>int</code>. The compiler overrides this for the 
+	 * multi-tasks returning <code>int</code>, so that {@link IntTaskIDGroup} stores their results without boxing them.
+	 */
+	protected int callInt(Object instance) throws Throwable {
+		return ((Integer) call(instance)).intValue();
+	}
+
+	/**
+	 * Same as {@link #callInt(Object)}, for a method returning <code>long</code> (see {@link LongTaskIDGroup}).
+	 */
+	protected long callLong(Object instance) throws Throwable {
+		return ((Long) call(instance)).longValue();
+	}
+
+	/**
+	 * Same as {@link #callInt(Object)}, for a method returning <code>double</code> (see {@link DoubleTaskIDGroup}).
+	 */
+	protected double callDouble(Object instance) throws Throwable {
+		return ((Double) call(instance)).doubleValue();
+	}
+
+	/**
+	 * Stores the specified (possibly boxed) value as the argument with the specified index.
+	 */
+	protected abstract void setArgument(int index, Object value);
+
+	/**
+	 * Returns the (boxed) argument with the specified index.
+	 */
+	protected abstract Object getArgument(int index);
+
+	/**
+	 * Sets an implicit <code>TaskID</code> argument, whose result is used as the argument with the specified index.
+	 */
+	public void setTaskIdArgument(int index, TaskID<?> taskID) {
+		if (taskIdArguments == null)
+			taskIdArguments = new TaskID<?>[signature.getParameterCount()];
+		taskIdArguments[index] = taskID;
+	}
+
+	/**
+	 * Stores the results of the implicit <code>TaskID</code> arguments in their fields. Only called once the
+	 * <code>TaskID</code>s have completed. The sub-tasks of a multi-task share the same call, so every sub-task 
+	 * substitutes the (same) results before executing.
+	 */
+	void substituteTaskIdArguments() throws ExecutionException, InterruptedException {
+		if (taskIdArguments == null)
+			return;
+		for (int i = 0; i < taskIdArguments.length; i++) {
+			if (taskIdArguments[i] != null)
+				setArgument(i, taskIdArguments[i].getReturnResult());
+		}
+		substituted = true;
+	}
+
+	/**
+	 * Returns the arguments as an array, where implicit <code>TaskID</code> arguments that have not been substituted yet
+	 * are the <code>TaskID</code>s themselves.
+	 */
+	Object[] getArguments() {
+		Object[] arguments = new Object[signature.getParameterCount()];
+		for (int i = 0; i < arguments.length; i++) {
+			if (!substituted && taskIdArguments != null && taskIdArguments[i] != null)
+				arguments[i] = taskIdArguments[i];
+			else
+				arguments[i] = getArgument(i);
+		}
+		return arguments;
+	}
+
+	void setArguments(Object[] arguments) {
+		for (int i = 0; i < arguments.length; i++)
+			setArgument(i, arguments[i]);
+	}
+
+	/**
+	 * Returns an invoker that copies the given arguments into this call before calling the method, for callers that
+	 * substitute the arguments in an array.
+	 */
+	TaskInvoker getInvoker() {
+		return new TaskInvoker() {
+			@Override
+			Object invoke(Object instance, Object[] args) throws InvocationTargetException {
+				try {
+					setArguments(args);
+					return call(instance);
+				} catch (Throwable t) {
+					throw new InvocationTargetException(t);
+				}
+			}
+		};
+	}
+
+	Method getMethod() {
+		return signature.getMethod();
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The body of a continuation registered through {@link TaskID#thenApply(Function)}, {@link TaskID#thenCombine(TaskID, BiFunction)}
+ * or {@link TaskID#whenComplete(BiConsumer)}.
+ * <br><br>
+ * A continuation is enqueued as an ordinary task whose <code>dependsOn</code> list holds its input <code>TaskID</code>s. It is
+ * therefore registered on the waiter lists of its inputs (see {@link TaskID#addWaiter(TaskID)}), and only becomes ready once
+ * all of them have completed. At that point it is scheduled on the worker pool like any other task, so no thread ever blocks
+ * waiting for the inputs.
+ * <br><br>
+ * Exceptions of the inputs are propagated to the continuation unchanged (i.e. not wrapped in an <code>ExecutionException</code>),
+ * so a chain of continuations reports the original failure.
+ */
+abstract class TaskContinuation {
+
+	/*
+	 * 	Resolved once, since every continuation is executed through the same (virtual) method.
+	 */
+	private static Method executeMethod = null;
+	
+	//-- the exception of an input, if this continuation failed only because that input failed
+	private Throwable propagatedFailure = null;
+
+	/**
+	 * Computes the result of this continuation. Only called once all the inputs have completed.
+	 */
+	abstract Object execute() throws Throwable;
+
+	/**
+	 * Enqueues <code>continuation</code> as a task that depends on the specified inputs.
+	 * @return	The <code>TaskID</code> representing the continuation.
+	 */
+	static <R> TaskID<R> enqueue(TaskContinuation continuation, TaskID<?>... inputs) {
+		TaskInfo taskinfo = new TaskInfo();
+		for (TaskID<?> input : inputs) {
+			if (input.isPipeline())
+				throw new UnsupportedOperationException("Continuations cannot be registered on a pipeline stage");
+			taskinfo.addDependsOn(input);
+		}
+		taskinfo.setMethod(getExecuteMethod());
+		taskinfo.setInstance(continuation);
+		return (TaskID<R>) TaskpoolFactory.getTaskpool().enqueue(taskinfo);
+	}
+
+	private static Method getExecuteMethod() {
+		if (executeMethod == null) {
+			try {
+				executeMethod = TaskContinuation.class.getDeclaredMethod("execute");
+			} catch (NoSuchMethodException e) {
+				throw new ParaTaskRuntimeException("Could not resolve TaskContinuation.execute()");
+			}
+		}
+		return executeMethod;
+	}
+
+	/**
+	 * Returns the result of a completed input. A <code>TaskIDGroup</code> has no single result, so <code>null</code> is
+	 * returned for groups once all their members have completed (use {@link TaskIDGroup#reduce(pu.RedLib.Reduction)}
+	 * inside the continuation to combine the member results).
+	 */
+	Object resultOf(TaskID<?> input) throws Throwable {
+		try {
+			if (input instanceof TaskIDGroup) {
+				input.waitTillFinished();
+				return null;
+			}
+			return input.getReturnResult();
+		} catch (ExecutionException e) {
+			if (e instanceof ParaTaskExceptionGroup || e.getCause() == null)
+				propagatedFailure = e;
+			else
+				propagatedFailure = e.getCause();
+			throw propagatedFailure;
+		}
+	}
+	
+	/**
+	 * Checks whether <code>exception</code> was only propagated by a continuation from one of its inputs. Such an exception 
+	 * has already been reported for the input, so it need not be reported again for every continuation in a chain.
+	 */
+	static boolean isPropagatedFailure(TaskInfo taskinfo, Throwable exception) {
+		Object instance = taskinfo.getInstance();
+		if (!(instance instanceof TaskContinuation))
+			return false;
+		return ((TaskContinuation) instance).propagatedFailure == exception;
+	}
+
+	static class Apply<E, R> extends TaskContinuation {
+		private final TaskID<E> input;
+		private final Function<? super E, ? extends R> function;
+
+		Apply(TaskID<E> input, Function<? super E, ? extends R> function) {
+			this.input = input;
+			this.function = function;
+		}
+
+		@Override
+		Object execute() throws Throwable {
+			return function.apply((E) resultOf(input));
+		}
+	}
+
+	static class Combine<E, U, R> extends TaskContinuation {
+		private final TaskID<E> first;
+		private final TaskID<U> second;
+		private final BiFunction<? super E, ? super U, ? extends R> function;
+
+		Combine(TaskID<E> first, TaskID<U> second, BiFunction<? super E, ? super U, ? extends R> function) {
+			this.first = first;
+			this.second = second;
+			this.function = function;
+		}
+
+		@Override
+		Object execute() throws Throwable {
+			return function.apply((E) resultOf(first), (U) resultOf(second));
+		}
+	}
+
+	static class WhenComplete<E> extends TaskContinuation {
+		private final TaskID<E> input;
+		private final BiConsumer<? super E, ? super Throwable> action;
+
+		WhenComplete(TaskID<E> input, BiConsumer<? super E, ? super Throwable> action) {
+			this.input = input;
+			this.action = action;
+		}
+
+		@Override
+		Object execute() throws Throwable {
+			E result = null;
+			Throwable failure = null;
+			try {
+				result = (E) resultOf(input);
+			} catch (Throwable t) {
+				failure = t;
+			}
+
+			action.accept(result, failure);
+
+			//-- the continuation completes the same way as its input
+			if (failure != null)
+				throw failure;
+			return result;
+		}
+	}
+}
@@ -21,16 +21,27 @@ package pt.runtime;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import pt.queues.PipelineQueue;
 
@@ -50,15 +61,18 @@ import pt.queues.PipelineQueue;
  * 8- Indicates if an instance of task has been successfully canceled (first cancel request, then practically cancel).<br>
  * 9- Keeps track of the progress of an instance of the task. <br>
  * 10-Returns the corresponding exception handler for a specific exception class by communicating with taskInfo<br> 
- * 11-Each instance has two count down latches. One for the registering thread, and one for other threads. Because<br>
- *    the registering thread is allowed to process through the slots, and we want to unblock the threads that are <br>
- *    waiting for the task to finish, before it starts proceeding through the slots (handlers)
+ * 11-Releases the threads blocked on the task before the slots (handlers) are executed, since the registering thread<br>
+ *    is allowed to process through the slots, and we want to unblock the threads that are waiting for the task to <br>
+ *    finish, before it starts proceeding through the slots.
  *<br><br>
  *Each task can have three states, <code>CREATED, CANCELLED</code> and <code>STARTED</code>. By default a task's status is 
  *set to CREATED, when its constructor is called. For a task to be executed or complete the execution it needs to be
- *on STARTED status. Whenever a task is created the count down latches will be set to one to block the threads that depend 
- *on this task, and when that task is completed, or cancelled the count down latches are set back to zero to unblock the 
- *threads.<br><br>
+ *on STARTED status. The status is packed into a single atomic <code>int</code>, together with the flags of the task 
+ *(e.g. cancel requested, user error, released and completed).<br><br>
+ *Most tasks are never waited on by a blocked thread, and have no slots, progress or pipeline. Therefore the state needed
+ *for those (the tasks and threads waiting for this task, the <code>CompletionStage</code>, the exception, the progress and
+ *the pipeline output queues) is only created once it is first needed. A blocked thread registers itself and parks until the
+ *task is released, and the tasks waiting for this task are notified once it is completed.<br><br>
  *All sub-tasks of a multi-task share the same globalID, at the time of creation. A taskID holds the information about
  *whether a task is interactive, and whether it has slots (handlers) to notify from the task.<br><br>
  *Moreover, this task enables requesting for cancellation of the instance of task, allows recording the tasks that are
@@ -66,6 +80,9 @@ import pt.queues.PipelineQueue;
  *which other threads can wait for the instance of task to finish (or do another task meanwhile they wait for the instance
  *of task to finish). For a task in order to complete all the slots stored in the task need to be executed; therefore the 
  *method 'enqueueSlots' must be called.      
+ *<br><br>
+ *A <code>TaskID</code> is also a <code>java.util.concurrent.Future</code>, and can be bridged to a <code>CompletionStage</code>
+ *via {@link #toCompletionStage()} (and back again via {@link #fromCompletionStage(CompletionStage)}).
  * 
  * 
  * @author Nasser Giacaman
@@ -76,7 +93,7 @@ import pt.queues.PipelineQueue;
  *
  * @param <E> The task's return type
  */
-public class TaskID<E> {
+public class TaskID<E> implements Future<E> {
 	
 	static protected AtomicInteger nextGlobalID = new AtomicInteger(-1);
 	
@@ -91,60 +108,111 @@ public class TaskID<E> {
 	protected TaskInfo taskInfo = null;
 	private E returnResult = null;
 	
-	private int progress = 0;
-
-	protected AtomicBoolean hasCompleted = null;
-	protected boolean cancelled = false;
-	protected AtomicBoolean cancelRequested = new AtomicBoolean(false);
-	
-    // the registering thread has its own latch, since it is allowed to progress inside slots of this TaskID
-    private CountDownLatch completedLatchForRegisteringThread= null;
-    
-    // all the other threads (non-registering threads) must wait at this latch, until slots complete
-    private CountDownLatch completedLatch = null;
-    
-	private ReentrantLock changeStatusLock = null;
-	
-	protected AtomicBoolean hasUserError = new AtomicBoolean(false);
-	private Throwable exception = null;
-	
-	private boolean isInteractive = false;
-	
-	protected ConcurrentLinkedQueue<TaskID<?>> waitingTasks = null;	// TaskIDs waiting for this task 
 	protected ConcurrentHashMap<TaskID<?>, Object> remainingDependences = null;	// TaskIDs this task is waiting for
 	
 	protected TaskIDGroup<E> group = null;
 	
-	protected boolean hasSlots = false;
-
+	//-- the status is kept in the lowest bits of the state
 	static final protected int CREATED = 0;
 	static final protected int CANCELLED = 1;
 	static final protected int STARTED = 2;
-	protected AtomicInteger status = new AtomicInteger(CREATED);
+	private static final int STATUS_MASK = 3;
+	
+	//-- the flags kept in the state
+	static final int CANCEL_REQUESTED = 1 << 2;
+	static final int CANCELLED_SUCCESSFULLY = 1 << 3;
+	static final int USER_ERROR = 1 << 4;
+	static final int RELEASED = 1 << 5;		// blocked threads are released (possibly before the slots are executed)
+	static final int COMPLETED = 1 << 6;
+	static final int INTERACTIVE = 1 << 7;
+	static final int HAS_SLOTS = 1 << 8;
+	static final int SUB_TASK = 1 << 9;
 	
-	// pipeline stuff
-	private List<PipelineQueue<E>> outputQueues = new ArrayList<PipelineQueue<E>>();
-	private boolean firstQueueClaimed = false;
-	private PipelineThread pipelineThread = null; 
+	private volatile int state = CREATED;
+	private static final AtomicIntegerFieldUpdater<TaskID> STATE = AtomicIntegerFieldUpdater.newUpdater(TaskID.class, "state");
+	
+	//-- whether tasks with slots (or handlers) are set as complete before their slots are executed, see enqueueSlots()
+	private static volatile boolean completeBeforeSlots = false;
+	
+	// only created once it is needed, see lazyState()
+	private volatile LazyState<E> lazyState = null;
+	private static final AtomicReferenceFieldUpdater<TaskID, LazyState> LAZY_STATE = 
+			AtomicReferenceFieldUpdater.newUpdater(TaskID.class, LazyState.class, "lazyState");
 	
 	/*
-	 * 
-	 * @Author  Kingsley
-	 * @since 04/05/2013
-	 * 
-	 * Later Expansion
-	 * Use this to indicate how many sub tasks should be expanded.
-	 * Can only be set the value from {@link AbstractTaskPool#enqueueMulti()}
-	 * 
-	 * */
-	private int count = 0;
+	 * The state that most tasks never need.
+	 */
+	private static final class LazyState<E> {
+		
+		// TaskIDs waiting for this task, and threads blocked (or workers parked) until this task is released or completed
+		final ConcurrentLinkedQueue<Object> waiters = new ConcurrentLinkedQueue<Object>();
+		
+		// only created if toCompletionStage() is called, completed directly by setComplete()
+		volatile CompletableFuture<E> completionStage = null;
+		
+		volatile Throwable exception = null;
+		volatile int progress = 0;
+		
+		// pipeline stuff, the output queues are guarded by this LazyState
+		List<PipelineQueue<E>> outputQueues = null;
+		boolean firstQueueClaimed = false;
+		boolean childTasksCancelled = false;
+		volatile PipelineStage pipelineStage = null;
+		
+		List<PipelineQueue<E>> outputQueues() {
+			if (outputQueues == null)
+				outputQueues = new ArrayList<PipelineQueue<E>>();
+			return outputQueues;
+		}
+	}
 	
-	protected int getCount() {
-		return count;
+	private LazyState<E> lazyState() {
+		LazyState<E> ls = lazyState;
+		if (ls == null) {
+			LAZY_STATE.compareAndSet(this, null, new LazyState<E>());
+			ls = lazyState;
+		}
+		return ls;
 	}
-
-	protected void setCount(int count) {
-		this.count = count;
+	
+	boolean hasStateFlag(int flag) {
+		return (state & flag) != 0;
+	}
+	
+	void setStateFlags(int flags) {
+		int current;
+		do {
+			current = state;
+			if ((current & flags) == flags)
+				return;
+		} while (!STATE.compareAndSet(this, current, current | flags));
+	}
+	
+	void clearStateFlags(int flags) {
+		int current;
+		do {
+			current = state;
+			if ((current & flags) == 0)
+				return;
+		} while (!STATE.compareAndSet(this, current, current & ~flags));
+	}
+	
+	/*
+	 * Sets the status, and returns the previous state.
+	 */
+	private int getAndSetStatus(int status) {
+		int current;
+		do {
+			current = state;
+		} while (!STATE.compareAndSet(this, current, (current & ~STATUS_MASK) | status));
+		return current;
+	}
+	
+	/*
+	 * The number of sub tasks to expand, only used by multi-tasks (see TaskIDGroup).
+	 */
+	protected int getCount() {
+		return 0;
 	}
 	
 	/*
@@ -155,14 +223,15 @@ public class TaskID<E> {
 	 * When a multi task is expanded, set this field to true for its every single sub tasks.
 	 * 
 	 * */
-	private boolean isSubTask = false;
-
 	protected boolean isSubTask() {
-		return isSubTask;
+		return hasStateFlag(SUB_TASK);
 	}
 
 	protected void setSubTask(boolean isSubTask) {
-		this.isSubTask = isSubTask;
+		if (isSubTask)
+			setStateFlags(SUB_TASK);
+		else
+			clearStateFlags(SUB_TASK);
 	}
 	
 	
@@ -189,7 +258,7 @@ public class TaskID<E> {
 	 * @return <code>true</code> if it has cancelled successfully, <code>false</code> otherwise. 
 	 */
 	public boolean cancelledSuccessfully() {
-		return cancelled;
+		return hasStateFlag(CANCELLED_SUCCESSFULLY);
 	}
 	
 	/**
@@ -198,7 +267,7 @@ public class TaskID<E> {
 	 * @return <code>true</code> if this is an interactive task, <code>false</code> otherwise.
 	 */
 	public boolean isInteractive() {
-		return isInteractive;
+		return hasStateFlag(INTERACTIVE);
 	}
 	
 	/**
@@ -212,14 +281,14 @@ public class TaskID<E> {
 	}
 	
 	/**
-	 * Assigns the thread for this stage of the pipeline. Used for cancelling
-	 * the stage via PipelineThread.cancel().
+	 * Assigns the stage of the pipeline executing this task. Used for cancelling
+	 * the stage via PipelineStage.cancel().
 	 */
-	protected void setPipelineThread(PipelineThread pt) {
+	void setPipelineStage(PipelineStage stage) {
 		if (!isPipeline()) 
-			throw new IllegalStateException("trying to assign PipelineThread to non-pipeline task");
+			throw new IllegalStateException("trying to assign PipelineStage to non-pipeline task");
 		
-		this.pipelineThread = pt;
+		lazyState().pipelineStage = stage;
 	}
 	
 	/**
@@ -246,26 +315,60 @@ public class TaskID<E> {
 		if (!isPipeline())
 			return null;
 		
-		synchronized(outputQueues) {
-			if (!firstQueueClaimed) {
-				firstQueueClaimed = true;
-				if (outputQueues.size() == 0) {
-					PipelineQueue<E> queue = new PipelineQueue<E>(this, requester);
-					outputQueues.add(queue);
-					return queue;
-				} else {
-					PipelineQueue<E> queue = outputQueues.get(0);
-					queue.setTailTask(requester);
-					return queue;
-				}
+		LazyState<E> ls = lazyState();
+		synchronized(ls) {
+			List<PipelineQueue<E>> outputQueues = ls.outputQueues();
+			PipelineQueue<E> queue;
+			if (!ls.firstQueueClaimed && outputQueues.size() > 0) {
+				queue = outputQueues.get(0);
+				queue.setTailTask(requester);
 			} else {
-				PipelineQueue<E> queue = new PipelineQueue<E>(this, requester);
+				queue = newOutputQueue(ls, requester);
 				outputQueues.add(queue);
-				return queue;
 			}
+			ls.firstQueueClaimed = true;
+			
+			// this stage has already finished, so the requesting stage will not be cancelled by cancelChildTasks()
+			if (ls.childTasksCancelled && requester != null)
+				requester.cancelAttempt();
+			return queue;
 		}
 	}
 	
+	/*
+	 * Creates an output queue with the capacity of the stage (see PipelineCapacity). Only called with the LazyState held.
+	 */
+	private PipelineQueue<E> newOutputQueue(LazyState<E> ls, TaskID requester) {
+		PipelineQueue<E> queue = new PipelineQueue<E>(this, requester);
+		if (ls.pipelineStage != null)
+			ls.pipelineStage.configureOutputQueue(queue);
+		else
+			queue.setCapacity(PipelineStage.getQueueCapacity(), PipelineStage.getQueueOverflow());
+		return queue;
+	}
+	
+	/**
+	 * Returns whether every output queue has space for more results (see {@link PipelineQueue#hasSpace()}). A queue 
+	 * that has not been claimed yet has no consumer that would make space, so it is not waited for.
+	 * 
+	 * Thread-safe.
+	 */
+	boolean outputQueuesHaveSpace() {
+		LazyState<E> ls = lazyState;
+		if (ls == null)
+			return true;
+		
+		synchronized(ls) {
+			if (ls.outputQueues != null && ls.firstQueueClaimed) {
+				for (PipelineQueue<E> queue : ls.outputQueues) {
+					if (!queue.hasSpace())
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * Unregisters a queue from a pipeline stage so that new results are no
 	 * longer written to it. Also, releases the reference so it can be GC'd.
@@ -280,9 +383,11 @@ public class TaskID<E> {
 			throw new IllegalStateException("trying to remove a queue from non-pipeline");
 		}
 		
-		synchronized(outputQueues) {
+		LazyState<E> ls = lazyState();
+		synchronized(ls) {
+			List<PipelineQueue<E>> outputQueues = ls.outputQueues();
 			if (!outputQueues.contains(queue))
-				throw new IllegalArgumentException(pipelineThread.getName() + ": queue to unregister not in outputQueues");
+				throw new IllegalArgumentException(ls.pipelineStage.getName() + ": queue to unregister not in outputQueues");
 			
 			outputQueues.remove(queue);
 			
@@ -291,29 +396,34 @@ public class TaskID<E> {
 			
 			// reset firstQueueClaimed flag
 			if (outputQueues.size() == 0)
-				firstQueueClaimed = false;
+				ls.firstQueueClaimed = false;
 		}
 	}
 	
 	/**
-	 * Write something into the output queue(s) handled by this TaskID. Only
-	 * existing queues will get the object.
+	 * Write several values into the output queue(s) handled by this TaskID, in 
+	 * a single transfer per queue. Only existing queues will get the values.
 	 * 
 	 * Thread-safe.
 	 */
-	protected void writeToOutputQueues(E value) {
+	protected void writeAllToOutputQueues(Collection<? extends E> values) {
 		if (!isPipeline()) {
 			// maybe replace this with "return;"
 			throw new IllegalStateException("trying to write to output queue when not a pipeline");
 		}
 		
-		synchronized(outputQueues) {
+		if (values.isEmpty())
+			return;
+		
+		LazyState<E> ls = lazyState();
+		synchronized(ls) {
+			List<PipelineQueue<E>> outputQueues = ls.outputQueues();
 			if (outputQueues.size() == 0) {
-				outputQueues.add(new PipelineQueue<E>(this, null));
+				outputQueues.add(newOutputQueue(ls, null));
 			}
 			
 			for (PipelineQueue<E> queue : outputQueues) {
-				queue.add(value);
+				queue.writeAll(values);
 			}
 		}
 	}
@@ -327,8 +437,10 @@ public class TaskID<E> {
 			throw new IllegalStateException("trying to cancel child stages when not a pipeline");
 		}
 		
-		synchronized(outputQueues) {
-			for (PipelineQueue<E> queue : outputQueues) {
+		LazyState<E> ls = lazyState();
+		synchronized(ls) {
+			ls.childTasksCancelled = true;
+			for (PipelineQueue<E> queue : ls.outputQueues()) {
 				if (queue.getTailTask() != null)
 					queue.getTailTask().cancelAttempt();
 			}
@@ -336,11 +448,12 @@ public class TaskID<E> {
 	}
 	
 	void setProgress(int progress) {
-		this.progress = progress;
+		lazyState().progress = progress;
 	}
 
 	public int getProgress() {
-		return progress;
+		LazyState<E> ls = lazyState;
+		return ls == null ? 0 : ls.progress;
 	}
 	
 	/**
@@ -351,16 +464,13 @@ public class TaskID<E> {
 	 * @see #cancelledSuccessfully()
 	 */
 	public boolean cancelRequested() {
-		return cancelRequested.get();
+		return hasStateFlag(CANCEL_REQUESTED);
 	}
 	
 	TaskID(boolean alreadyCompleted) {
 		if (alreadyCompleted) {
 			globalID = nextGlobalID.incrementAndGet();
-			completedLatch = new CountDownLatch(0);
-			completedLatch = new CountDownLatch(0);
-			hasCompleted = new AtomicBoolean(true);
-			status = new AtomicInteger(STARTED);
+			state = STARTED | RELEASED | COMPLETED;
 		} else {
 			throw new UnsupportedOperationException("Don't call this constructor if passing in 'false'!");
 		}
@@ -380,25 +490,22 @@ public class TaskID<E> {
 	
 	TaskID() {
 		//globalID = nextGlobalID.incrementAndGet();
-		completedLatch = new CountDownLatch(1);
-		hasCompleted = new AtomicBoolean(false);
-		status = new AtomicInteger(CREATED);
-		changeStatusLock = new ReentrantLock();
 	}
 	
 	/*
 	 * This constructor receives information about, whether a task is interactive
-	 * as well as it sets the count down latch to one. 
+	 * and whether it has slots. 
 	 * */
 	TaskID(TaskInfo taskInfo) {
 		this();
 		globalID = nextGlobalID.incrementAndGet();
-		completedLatchForRegisteringThread = new CountDownLatch(1);
 		this.taskInfo = taskInfo;
-		isInteractive = taskInfo.isInteractive();
-		if (taskInfo != null) {
-			hasSlots = taskInfo.getSlotsToNotify() != null;
-		}
+		int flags = CREATED;
+		if (taskInfo.isInteractive())
+			flags |= INTERACTIVE;
+		if (taskInfo.getSlotsToNotify() != null)
+			flags |= HAS_SLOTS;
+		state = flags;
 	}
 	
 	/**
@@ -419,19 +526,19 @@ public class TaskID<E> {
 	 * @see #cancelledSuccessfully()
 	 */
 	public boolean cancelAttempt() {
-		cancelRequested.set(true);
+		setStateFlags(CANCEL_REQUESTED);
 		
 		if (isPipeline()) {
-			// this tells PipelineThread that some parent has requested cancel
+			// this tells the PipelineStage that some parent has requested cancel
 			// it can be called more than once because of multiple parent stages
-			pipelineThread.cancel();
-			cancelled = true;
+			lazyState().pipelineStage.cancel();
+			setStateFlags(CANCELLED_SUCCESSFULLY);
 		}
 		
-		int prevStatus = status.getAndSet(CANCELLED);
+		int prevState = getAndSetStatus(CANCELLED);
 		
-		if (prevStatus == CREATED || cancelled) {
-			cancelled = true;
+		if ((prevState & STATUS_MASK) == CREATED || (prevState & CANCELLED_SUCCESSFULLY) != 0) {
+			setStateFlags(CANCELLED_SUCCESSFULLY);
 			return true;
 		}
 		return false;
@@ -455,8 +562,8 @@ public class TaskID<E> {
 	 * @since  9/9/2014
 	 * */
 	boolean executeAttempt() {
-		int prevStatus = status.getAndSet(STARTED);
-		return prevStatus == CREATED;
+		int prevState = getAndSetStatus(STARTED);
+		return (prevState & STATUS_MASK) == CREATED;
 	}
 	
 	void setEnclosingTask(TaskID enclosingTask) {
@@ -478,21 +585,58 @@ public class TaskID<E> {
 	 * @since  9/9/2014
 	 * */
 	void addWaiter(TaskID<?> waiter) {
-		if (hasCompleted.get()) {
-			waiter.dependenceFinished(this);
-		} else {
-			changeStatusLock.lock();
+		if (!hasCompleted()) {
+			ConcurrentLinkedQueue<Object> waiters = lazyState().waiters;
+			waiters.add(waiter);
 			
-			if (!hasCompleted.get()) {
-				if (waitingTasks == null)
-					waitingTasks = new ConcurrentLinkedQueue<TaskID<?>>();
-				
-				waitingTasks.add(waiter);
-			} else {
-				waiter.dependenceFinished(this);
-			}
-			changeStatusLock.unlock();
+			//-- if this task completed meanwhile, either setComplete() or this thread takes the waiter back out
+			if (!hasCompleted() || !waiters.remove(waiter))
+				return;
 		}
+		waiter.dependenceFinished(this);
+	}
+	
+	/**
+	 * Registers a continuation that applies <code>function</code> to the result of this task. The continuation is
+	 * registered as a waiter of this task and, once this task completes, is executed as a new task on the worker pool.
+	 * Neither the calling thread nor a worker thread blocks in the meantime.
+	 * <br><br>
+	 * If this task fails, the continuation fails with the same exception without invoking <code>function</code>.
+	 * 
+	 * @param function	The function to apply to the result of this task.
+	 * @return	A <code>TaskID</code> representing the result of the continuation.
+	 * @see #thenCombine(TaskID, BiFunction)
+	 * @see #whenComplete(BiConsumer)
+	 */
+	public <R> TaskID<R> thenApply(Function<? super E, ? extends R> function) {
+		return TaskContinuation.enqueue(new TaskContinuation.Apply<E, R>(this, function), this);
+	}
+	
+	/**
+	 * Registers a continuation that combines the results of this task and <code>other</code>. The continuation is executed
+	 * as a new task on the worker pool once both tasks have completed. If either task fails, the continuation fails 
+	 * with that exception without invoking <code>function</code>.
+	 * 
+	 * @param other		The other task whose result is combined with the result of this task.
+	 * @param function	The function combining the two results.
+	 * @return	A <code>TaskID</code> representing the result of the continuation.
+	 * @see #thenApply(Function)
+	 */
+	public <U, R> TaskID<R> thenCombine(TaskID<U> other, BiFunction<? super E, ? super U, ? extends R> function) {
+		return TaskContinuation.enqueue(new TaskContinuation.Combine<E, U, R>(this, other, function), this, other);
+	}
+	
+	/**
+	 * Registers an action that is executed as a new task on the worker pool once this task completes. The action receives
+	 * the result of this task (or <code>null</code> if it failed) and the exception thrown by this task (or <code>null</code>
+	 * if it succeeded). The returned <code>TaskID</code> completes with the same result, or exception, as this task.
+	 * 
+	 * @param action	The action to execute when this task completes.
+	 * @return	A <code>TaskID</code> that completes once <code>action</code> has been executed.
+	 * @see #thenApply(Function)
+	 */
+	public TaskID<E> whenComplete(BiConsumer<? super E, ? super Throwable> action) {
+		return TaskContinuation.enqueue(new TaskContinuation.WhenComplete<E>(this, action), this);
 	}
 	
 	/**
@@ -569,7 +713,146 @@ public class TaskID<E> {
 		waitTillFinished();
 		if (cancelledSuccessfully())
 			throw new ParaTaskRuntimeException("Attempting to get the result of a cancelled Task!");
-		return returnResult;
+		return peekReturnResult();
+	}
+	
+	/**
+	 * Same as {@link #getReturnResult()}, except that a <code>CancellationException</code> is thrown (without waiting) if 
+	 * the task was cancelled, as required by <code>Future</code>.
+	 * @see Future#get()
+	 */
+	@Override
+	public E get() throws InterruptedException, ExecutionException {
+		if (!cancelledSuccessfully())
+			awaitCompletion();
+		return getCompletedResult();
+	}
+	
+	/**
+	 * Returns the result of the task, waiting at most for the given time for the task to finish. As with 
+	 * {@link #getReturnResult()}, ParaTask worker threads execute other ready tasks while they wait. 
+	 * @see Future#get(long, TimeUnit)
+	 */
+	@Override
+	public E get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!cancelledSuccessfully() && !awaitCompletion(System.nanoTime() + unit.toNanos(timeout)))
+			throw new TimeoutException("Task " + globalID + " did not complete within " + timeout + " " + unit);
+		return getCompletedResult();
+	}
+	
+	private E getCompletedResult() throws ExecutionException {
+		if (cancelledSuccessfully())
+			throw new CancellationException("Task " + globalID + " was cancelled");
+		if (hasUserError())
+			throw new ExecutionException(getException());
+		return peekReturnResult();
+	}
+	
+	/**
+	 * Same as {@link #cancelAttempt()}. A running task is never interrupted, it should instead check 
+	 * {@link CurrentTask#cancelRequested()}.
+	 * @see Future#cancel(boolean)
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return cancelAttempt();
+	}
+	
+	/**
+	 * Same as {@link #cancelledSuccessfully()}.
+	 * @see Future#isCancelled()
+	 */
+	@Override
+	public boolean isCancelled() {
+		return cancelledSuccessfully();
+	}
+	
+	/**
+	 * Same as {@link #hasCompleted()}.
+	 * @see Future#isDone()
+	 */
+	@Override
+	public boolean isDone() {
+		return hasCompleted();
+	}
+	
+	/**
+	 * Returns a <code>CompletionStage</code> that completes with the result (or exception) of this task. The stage is completed
+	 * directly by the thread that completes this task, so no thread blocks on the task to bridge the two. The same stage is
+	 * returned by every call.
+	 * <br><br>
+	 * The stage completes at the same time as {@link #hasCompleted()} becomes <code>true</code> (i.e. after any slots of
+	 * this task have been executed). If the task was cancelled, the stage is cancelled too.
+	 * 
+	 * @return	A <code>CompletionStage</code> representing this task.
+	 * @see #fromCompletionStage(CompletionStage)
+	 */
+	public CompletionStage<E> toCompletionStage() {
+		LazyState<E> current = lazyState;
+		CompletableFuture<E> stage = current == null ? null : current.completionStage;
+		if (stage != null)
+			return stage;
+		
+		LazyState<E> ls = lazyState();
+		synchronized (ls) {
+			if (ls.completionStage == null)
+				ls.completionStage = new CompletableFuture<E>();
+			stage = ls.completionStage;
+		}
+		
+		//-- setComplete() only sees the stage if it was created before the task completed, so check again 
+		//-- (the stage may be completed twice, which has no effect)
+		if (hasCompleted())
+			completeStage(stage);
+		return stage;
+	}
+	
+	private void completeStage(CompletableFuture<E> stage) {
+		if (cancelledSuccessfully())
+			stage.cancel(false);
+		else if (hasUserError())
+			stage.completeExceptionally(getCompletionException());
+		else
+			stage.complete(peekReturnResult());
+	}
+	
+	/**
+	 * Returns the exception that completes the <code>CompletionStage</code> of a failed task.
+	 */
+	Throwable getCompletionException() {
+		return getException();
+	}
+	
+	/**
+	 * Creates a <code>TaskID</code> that completes when <code>stage</code> completes, with the same result or exception. This
+	 * allows, for example, a <code>CompletableFuture</code> to be used in the <code>dependsOn</code> clause of a task.
+	 * No thread blocks on <code>stage</code>; the <code>TaskID</code> is completed by the thread that completes the stage.
+	 * 
+	 * @param stage	The stage to bridge.
+	 * @return	A <code>TaskID</code> representing <code>stage</code>.
+	 * @see #toCompletionStage()
+	 * @see TaskInfo#addDependsOn(CompletionStage)
+	 */
+	public static <E> TaskID<E> fromCompletionStage(CompletionStage<E> stage) {
+		final TaskID<E> taskID = new TaskID<E>(new TaskInfo());
+		
+		//-- the stage is already running, so the TaskID can no longer be cancelled
+		taskID.executeAttempt();
+		
+		stage.whenComplete(new BiConsumer<E, Throwable>() {
+			@Override
+			public void accept(E result, Throwable failure) {
+				if (failure != null) {
+					if (failure instanceof CompletionException && failure.getCause() != null)
+						failure = failure.getCause();
+					taskID.setException(failure);
+				} else {
+					taskID.setReturnResult(result);
+				}
+				taskID.setComplete();
+			}
+		});
+		return taskID;
 	}
 	
 	/**
@@ -588,7 +871,7 @@ public class TaskID<E> {
 	 * <br><br>
 	 * If the current thread is a worker thread and is not poisoned, neither it is cancelled 
 	 * already, it will be allowed to execute some other tasks (depending on the scheduling 
-	 * scheme) or it can go to sleep. If the thread is logically cancelled already, it will 
+	 * scheme) or it can park until the task completes. If the thread is logically cancelled already, it will 
 	 * sleep until it is shut down by the virtual machine.
 	 * <br><br>
 	 * If the current thread is not a worker thread, and is the thread that as registered this
@@ -603,44 +886,144 @@ public class TaskID<E> {
 	 * @since 25/05/2013
 	 * */
 	public void waitTillFinished() throws ExecutionException, InterruptedException {		
-		if (!hasCompleted.get()) {
+		awaitCompletion();
+		
+		//-- task has completed.. was there a user error?
+		if (hasUserError()) {
+			throw new ExecutionException(getException());
+		}
+	}
+	
+	/**
+	 * Waits for the task to complete, as described in {@link #waitTillFinished()}. A worker thread that finds no other 
+	 * task to execute parks until either this task releases its blocked threads (see {@link #setComplete()} and
+	 * {@link #releaseBlockedThreadsBeforeSlots()}), or it is time to look for other tasks again. As for other threads, 
+	 * this is before the slots of the task are executed, so that a slot executed by a worker may wait for its own task. 
+	 */
+	void awaitCompletion() throws InterruptedException {
+		if (!hasStateFlag(RELEASED)) {
 			Thread t = Thread.currentThread();
 			
 			/* Only WorkerThreads should start a new TaskID.. all other threads belong to the user, or 
 			 * are InteractiveThreads (therefore it is OK for them to block) */
 			if (t instanceof WorkerThread) {
-				WorkerThread currentWorker = (WorkerThread) t;
-				while (!hasCompleted.get()) {
-					if (currentWorker.isCancelRequired() && !currentWorker.isCancelled()) {
-						LottoBox.tryLuck();
-					}
-					
-					if (!currentWorker.isCancelled()) {
-						currentWorker.executeAnotherTaskOrSleep();
+				awaitAsWorker((WorkerThread) t, false, 0);
+			} else {
+				awaitRelease(false, 0);
+			}
+		}
+	}
+	
+	/**
+	 * Same as {@link #awaitCompletion()}, but only waits until the deadline (as given by <code>System.nanoTime()</code>).
+	 * Returns whether the task completed in time.
+	 */
+	boolean awaitCompletion(long deadline) throws InterruptedException {
+		if (hasStateFlag(RELEASED))
+			return true;
+		
+		Thread t = Thread.currentThread();
+		if (t instanceof WorkerThread) {
+			return awaitAsWorker((WorkerThread) t, true, deadline);
+		} else {
+			return awaitRelease(true, deadline);
+		}
+	}
+	
+	/*
+	 * Executes other tasks on the current worker thread until this task releases its blocked threads, and parks whenever 
+	 * there is no other task to execute. A timed wait takes no other task once the deadline has passed, and never parks 
+	 * beyond it (although a task taken before the deadline may still finish after it). Returns false if the deadline 
+	 * passed first.
+	 */
+	private boolean awaitAsWorker(WorkerThread currentWorker, boolean timed, long deadline) {
+		boolean registered = false;
+		try {
+			while (!hasStateFlag(RELEASED)) {
+				long remaining = TimeUnit.MILLISECONDS.toNanos(ParaTask.WORKER_SLEEP_DELAY);
+				if (timed) {
+					long untilDeadline = deadline - System.nanoTime();
+					if (untilDeadline <= 0)
+						return false;
+					remaining = Math.min(remaining, untilDeadline);
+				}
+				
+				if (currentWorker.isCancelRequired() && !currentWorker.isCancelled()) {
+					LottoBox.tryLuck();
+				}
+				
+				if (!currentWorker.isCancelled()) {
+					if (currentWorker.executeAnotherTask()) {
+						//-- look for more work before parking
+					} else if (!registered) {
+						//-- re-check for completion after registering, before parking
+						registered = true;
+						if (!addWaitingThread(currentWorker))
+							break;
 					} else {
-						try {
-							Thread.sleep(ParaTask.WORKER_SLEEP_DELAY);
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-						}
+						LockSupport.parkNanos(this, remaining);
 					}
-					
-				}
-			} else {
-				if (currentThreadIsTheRegisteredThread()) {
-					completedLatchForRegisteringThread.await();
 				} else {
-					completedLatch.await();
+					try {
+						Thread.sleep(TimeUnit.NANOSECONDS.toMillis(remaining));
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
 				}
+				
 			}
+			return true;
+		} finally {
+			//-- the task may only be released (rather than complete), in which case it keeps its waiters
+			if (registered)
+				lazyState.waiters.remove(currentWorker);
 		}
+	}
+	
+	/*
+	 * Blocks the current (non-worker) thread until this task releases its blocked threads, i.e. before its slots are 
+	 * executed (or once it completes, if there are none). Returns false if the deadline passed first.
+	 */
+	private boolean awaitRelease(boolean timed, long deadline) throws InterruptedException {
+		if (hasStateFlag(RELEASED))
+			return true;
 		
-		//-- task has completed.. was there a user error?
-		if (hasUserError.get()) {
-			throw new ExecutionException(exception);
+		Thread current = Thread.currentThread();
+		if (!addWaitingThread(current))
+			return true;
+		try {
+			while (!hasStateFlag(RELEASED)) {
+				if (Thread.interrupted())
+					throw new InterruptedException();
+				if (timed) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0)
+						return false;
+					LockSupport.parkNanos(this, remaining);
+				} else {
+					LockSupport.park(this);
+				}
+			}
+			return true;
+		} finally {
+			lazyState.waiters.remove(current);
 		}
 	}
 	
+	/*
+	 * Registers a thread to be unparked when this task is released. Returns false if the task has already been released.
+	 */
+	private boolean addWaitingThread(Thread thread) {
+		ConcurrentLinkedQueue<Object> waiters = lazyState().waiters;
+		waiters.add(thread);
+		//-- re-check, in case the task was released before the thread was added
+		if (hasStateFlag(RELEASED)) {
+			waiters.remove(thread);
+			return false;
+		}
+		return true;
+	}
+	
 	protected boolean currentThreadIsTheRegisteredThread() {
 		Thread registered = taskInfo.getRegisteringThread();
 		if (registered == null)
@@ -651,8 +1034,19 @@ public class TaskID<E> {
 			return registered == Thread.currentThread();
 	}
 	
+	/**
+	 * Returns the result without waiting for the task to be set as complete. Only valid once the task body has returned.
+	 */
+	E peekReturnResult() {
+		if (group != null)
+			return group.loadInnerTaskResult(relativeID, returnResult);
+		return returnResult;
+	}
+	
 	void setReturnResult(E returnResult) {
-		this.returnResult = returnResult;
+		//-- the sub-tasks of a primitive multi-task store their results in the group instead
+		if (group == null || !group.storeInnerTaskResult(relativeID, returnResult))
+			this.returnResult = returnResult;
 	}
 	
 	/**
@@ -660,12 +1054,13 @@ public class TaskID<E> {
 	 * @return	The exception that occurred.
 	 */
 	public Throwable getException() {
-		return exception;
+		LazyState<E> ls = lazyState;
+		return ls == null ? null : ls.exception;
 	}
 	
 	void setException(Throwable exception) {
-		this.exception = exception;
-		hasUserError.set(true);
+		lazyState().exception = exception;
+		setStateFlags(USER_ERROR);
 		if (group != null) {
 			group.setException(exception);
 		}
@@ -678,7 +1073,7 @@ public class TaskID<E> {
 	 * @see CurrentTask#getProgress()
 	 */
 	public boolean hasCompleted() {
-		return hasCompleted.get();
+		return hasStateFlag(COMPLETED);
 	}
 
 	/**
@@ -686,7 +1081,7 @@ public class TaskID<E> {
 	 * @return	<code>true</code> if there was an error, <code>false</code> otherwise
 	 */
 	public boolean hasUserError() {
-		return hasUserError.get();
+		return hasStateFlag(USER_ERROR);
 	}
 	
 	/**
@@ -706,22 +1101,25 @@ public class TaskID<E> {
 	 * @since 9/9/2014
 	 * */
 	void setComplete() {
+		//-- the flags are set before looking for waiters, and waiters are added before checking the flags
+		setStateFlags(RELEASED | COMPLETED);
 		
-		changeStatusLock.lock();
-		TaskID<?> waiter = null;
+		LazyState<E> ls = lazyState;
+		if (ls == null)
+			return;
 		
-		if (waitingTasks != null) {
-			while ((waiter = waitingTasks.poll()) != null) {
-				// removes the waiter from the queue
-				waiter.dependenceFinished(this);
-			}
+		Object waiter;
+		while ((waiter = ls.waiters.poll()) != null) {
+			// removes the waiter from the queue
+			if (waiter instanceof TaskID)
+				((TaskID<?>) waiter).dependenceFinished(this);
+			else
+				LockSupport.unpark((Thread) waiter);
 		}
 		
-		completedLatchForRegisteringThread.countDown();	//-- in case there were slots
-		completedLatch.countDown();
-		hasCompleted.set(true);
-		changeStatusLock.unlock();
-		
+		CompletableFuture<E> stage = ls.completionStage;
+		if (stage != null)
+			completeStage(stage);
 	}
 	
 
@@ -741,21 +1139,33 @@ public class TaskID<E> {
 		if (group != null && group.isMultiTask()) {
 			//part of a multi-task, will only enqueue the slots of the group when the last TaskID in the group completes
 			//however, this specific sub-task should be set as complete to release the threads that are waiting on it. 
-			group.oneMoreInnerTaskCompleted();
+			group.oneMoreInnerTaskCompleted(this);
 			setComplete();	
+			group.innerTaskSetComplete(this);
 		} else {
-			if (hasUserError() || hasSlots) {
-				//so that registering thread will not block in slots
-				completedLatchForRegisteringThread.countDown();  
-				completedLatch.countDown();
-				
-				if (hasUserError.get())
-					executeHandlers();
-				if (hasSlots)
-					executeSlots();
+			if (hasUserError() || hasSlots() || (taskInfo != null && taskInfo.getInterSlotsToNotify() != null)) {
+				ArrayList<Slot> toExecute = new ArrayList<Slot>();
+				executeScheduledInterimSlots(toExecute);
+				if (hasUserError())
+					executeHandlers(toExecute);
+				if (hasSlots())
+					executeSlots(toExecute);
 				
-				//-- 		since slots are executed in the order they are enqueued, then this will be the last slot! :-)
-				callTaskListener(new Slot(ParaTaskHelper.setCompleteSlot, this, false, Slot.SetCompleteSlot.TRUE));
+				if (completeBeforeSlots) {
+					//-- dependent tasks and waiting threads do not wait for the slots, which are still executed in order
+					setComplete();
+					if (!toExecute.isEmpty())
+						callTaskListener(toExecute);
+				} else if (toExecute.isEmpty()) {
+					//-- only has interim slots, which have delivered their results already
+					setComplete();
+				} else {
+					releaseBlockedThreadsBeforeSlots();
+					
+					//-- 		since slots are executed in the order they are enqueued, then this will be the last slot! :-)
+					toExecute.add(setCompleteSlot());
+					callTaskListener(toExecute);
+				}
 				
 			} else {
 				setComplete();
@@ -763,6 +1173,35 @@ public class TaskID<E> {
 		}
 	}
 	
+	/*
+	 * Releases the threads blocked on this task (rather than helping), before the slots or handlers are executed. 
+	 * This is so that the registering thread will not block in slots.
+	 */
+	void releaseBlockedThreadsBeforeSlots() {
+		setStateFlags(RELEASED);
+		
+		//-- the threads stay registered, and are unparked again once the task completes
+		LazyState<E> ls = lazyState;
+		if (ls != null) {
+			for (Object waiter : ls.waiters) {
+				if (waiter instanceof Thread)
+					LockSupport.unpark((Thread) waiter);
+			}
+		}
+	}
+	
+	boolean hasSlots() {
+		return hasStateFlag(HAS_SLOTS);
+	}
+	
+	static void setCompleteBeforeSlots(boolean beforeSlots) {
+		completeBeforeSlots = beforeSlots;
+	}
+	
+	static boolean isCompleteBeforeSlots() {
+		return completeBeforeSlots;
+	}
+	
 	/**
 	 * Returns the appropriate exception hanlder for a specific class of exception,
 	 * by receiving that exception class as argument.
@@ -785,13 +1224,17 @@ public class TaskID<E> {
 		return handler;
 	}
 	
-	//-- returns the number of handlers that it will execute for this TaskID
-	private int executeHandlers() {
+	//-- returns the number of handlers that it will execute for this TaskID (added to the slots to execute)
+	private int executeHandlers(List<Slot> toExecute) {
+		Throwable exception = getException();
 		Slot handler = getExceptionHandler(exception.getClass());
 		
 		if (handler != null) {
-			callTaskListener(handler);
+			toExecute.add(handler);
 			return 1;
+		} else if (TaskContinuation.isPropagatedFailure(taskInfo, exception)) {
+			//-- already reported for the input of this continuation
+			return 0;
 		} else {
 			String taskName = "";
 			Method method = taskInfo.getMethod();
@@ -815,17 +1258,53 @@ public class TaskID<E> {
 		}
 	}
 	
+	/*
+	 * The last slot executed for a task with slots, which sets the task as complete. It belongs to this task like the 
+	 * other slots, so that the task listener executes it after them.
+	 */
+	Slot setCompleteSlot() {
+		Slot slot = new Slot(ParaTaskHelper.setCompleteSlot, this, false, Slot.SetCompleteSlot.TRUE);
+		slot.setTaskID(this);
+		return slot;
+	}
+	
 	void callTaskListener(Slot slot) {
 		ParaTask.getEDTTaskListener().executeSlot(slot);
 	}
 	
+	/*
+	 * Hands the slots to the task listener at once, since they must be executed in this order.
+	 */
+	void callTaskListener(List<Slot> slots) {
+		ParaTask.getEDTTaskListener().executeSlots(slots);
+	}
+	
 	protected int executeIntermediateSlots() {
 		return 0;
 	}
 	
-	protected int executeSlots() {
-		for (Iterator<Slot> it = taskInfo.getSlotsToNotify().iterator(); it.hasNext(); ) 
-			callTaskListener(it.next());
+	/*
+	 * Adds the interim slots whose (THROTTLED) execution is still scheduled to the slots to execute, so that the latest
+	 * interim result is delivered before the task completes, and before the other slots.
+	 */
+	int executeScheduledInterimSlots(List<Slot> toExecute) {
+		TaskInfo info = getTaskInfo();
+		List<Slot> interSlots = info == null ? null : info.getInterSlotsToNotify();
+		if (interSlots == null)
+			return 0;
+		int count = 0;
+		for (Slot slot : interSlots) {
+			if (slot.cancelScheduledInterimExecution()) {
+				toExecute.add(slot);
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	//-- adds the slots to notify to the slots to execute
+	protected int executeSlots(List<Slot> toExecute) {
+		toExecute.addAll(taskInfo.getSlotsToNotify());
 		return taskInfo.getSlotsToNotify().size();
 	}
 	
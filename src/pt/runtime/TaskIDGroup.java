@@ -19,13 +19,23 @@
 
 package pt.runtime;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import pu.RedLib.Reduction;
 
@@ -47,13 +57,27 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	
 	private AtomicInteger numTaskCompleted = new AtomicInteger(0);
 	
-	private AtomicInteger barrier = new AtomicInteger(0);
+	//-- only created once a sub-task reaches the barrier
+	private MultiTaskBarrier barrier = null;
+	
+	//-- multi-tasks fold the results of their sub-tasks incrementally, for the first reduction registered
+	private GroupReduction<E> incrementalReduction = null;
+	private boolean registeredReduction = false;
 	
 	//-- Reductions are only performed once at most, by a single thread
 	private boolean performedReduction = false;
 	private ReentrantLock reductionLock = new ReentrantLock();
 	private E reductionAnswer;
 	
+	//-- multi-tasks always record their completion order, user-created groups only once it is requested
+	private CompletionOrder completionOrder = null;
+	
+	//-- reducers whose views were created by the sub-tasks, combined once all the sub-tasks complete
+	private ArrayList<Reducer<?>> reducers = null;
+	
+	//-- a group populated by the user counts down its members as they complete (see dependenceFinished())
+	private AtomicInteger pendingMembers = null;
+	
 	private int nextRelativeID = 0;
 	
 	private int groupSize = 0;
@@ -66,17 +90,44 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	private CopyOnWriteArrayList<Throwable> exceptionList = new CopyOnWriteArrayList<Throwable>();
 	
 	/*
-	 *  This is used to indicate if the multi task has been expanded or not
+	 *  Released once the multi task has been expanded (i.e. its inner tasks have been created)
 	 */
-	private boolean isExpanded = false;
+	private final CountDownLatch expansionLatch = new CountDownLatch(1);
+	
+	/*
+	 * 
+	 * @Author  Kingsley
+	 * @since 04/05/2013
+	 * 
+	 * Later Expansion
+	 * Use this to indicate how many sub tasks should be expanded.
+	 * Can only be set the value from {@link AbstractTaskPool#enqueueMulti()}
+	 * 
+	 * */
+	private int count = 0;
+	
+	@Override
+	protected int getCount() {
+		return count;
+	}
+
+	protected void setCount(int count) {
+		this.count = count;
+	}
 	
 	/**
 	 * This public constructor is actually used to group a bunch of tasks, which
 	 * may include one-off task or multi task, should not give any id to this 
 	 * group.
+	 * <br><br>
+	 * The group completes (e.g. for {@link #isDone()}, {@link #toCompletionStage()} and the continuations registered on it) 
+	 * once <code>groupSize</code> members have been added, and all the added members have completed.
 	 * */
 	public TaskIDGroup(int groupSize) {
 		this.groupSize = groupSize;
+		this.pendingMembers = new AtomicInteger(groupSize);
+		if (groupSize == 0)
+			setComplete();
 	}
 	
 	//-- this is only used to create a multi-task (the size is known before adding the inner tasks)
@@ -85,6 +136,24 @@ public class TaskIDGroup<E> extends TaskID<E> {
 		this.isMultiTask = true;
 		this.groupSize = groupSize;
 		this.taskInfo = taskInfo;
+		this.incrementalReduction = new GroupReduction<E>(groupSize);
+		this.completionOrder = new CompletionOrder(groupSize);
+	}
+	
+	/**
+	 * Creates the group for a multi-task. Multi-tasks whose method returns <code>int</code>, <code>long</code> or 
+	 * <code>double</code> store the results of their sub-tasks in a primitive array.
+	 */
+	static TaskIDGroup<?> createMultiTask(int groupSize, TaskInfo taskInfo) {
+		Class<?> returnType = taskInfo.getMethod() == null ? null : taskInfo.getMethod().getReturnType();
+		if (returnType == int.class)
+			return new IntTaskIDGroup(groupSize, taskInfo);
+		else if (returnType == long.class)
+			return new LongTaskIDGroup(groupSize, taskInfo);
+		else if (returnType == double.class)
+			return new DoubleTaskIDGroup(groupSize, taskInfo);
+		else
+			return new TaskIDGroup(groupSize, taskInfo);
 	}
 	
 	/**
@@ -99,6 +168,31 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	
 	public void add(TaskID<?> id) {
 		innerTasks.add(id);
+		
+		if (!isMultiTask) {
+			//-- a member beyond the size given to the constructor is waited for as well (unless the group completed already)
+			if (innerTasks.size() > groupSize)
+				pendingMembers.incrementAndGet();
+			id.addWaiter(this);
+		}
+	}
+	
+	/**
+	 * A group populated by the user is registered as a waiter on each of its members (see {@link #add(TaskID)}), and 
+	 * completes once the last of them completes. A multi-task only waits for the tasks in its <code>dependsOn</code> 
+	 * clause here, since its sub-tasks are counted by {@link #oneMoreInnerTaskCompleted(TaskID)}.
+	 */
+	@Override
+	void dependenceFinished(TaskID<?> otherTask) {
+		if (isMultiTask) {
+			super.dependenceFinished(otherTask);
+			return;
+		}
+		
+		if (otherTask.hasUserError())
+			setStateFlags(USER_ERROR);
+		if (pendingMembers.decrementAndGet() == 0)
+			setComplete();
 	}
 	
 	/**
@@ -112,10 +206,36 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	/**
 	 * Perform a reduction on the set of results. A reduction is only to be performed once. 
 	 * If this is called a second time then the pre-calculated answer is returned.
+	 * <br><br>
+	 * For a multi-task, the results are folded incrementally as the sub-tasks complete (from the moment this method is first
+	 * called), in a combining tree keyed by relative ID. Therefore, little work is left once the last sub-task completes. The 
+	 * results are still combined in relative ID order, so the answer is the same as folding them one after the other, as 
+	 * long as the reduction is associative (as are all the reductions in <code>pu.RedLib</code>). 
 	 * @param red	The reduction to perform
 	 * @return The result of performing the reduction on the set of <code>TaskID</code>s contained in this group.
+	 * @see #reduceInOrder(Reduction)
 	 */
 	public E reduce(Reduction<E> red) throws ExecutionException, InterruptedException {
+		return reduce(red, false);
+	}
+	
+	/**
+	 * Same as {@link #reduce(Reduction)}, but for reductions that are not associative. The results of a multi-task are
+	 * still folded as the sub-tasks complete, but strictly one after the other in relative ID order. 
+	 * @param red	The reduction to perform
+	 * @return The result of performing the reduction on the set of <code>TaskID</code>s contained in this group.
+	 */
+	public E reduceInOrder(Reduction<E> red) throws ExecutionException, InterruptedException {
+		return reduce(red, true);
+	}
+	
+	private E reduce(Reduction<E> red, boolean inOrder) throws ExecutionException, InterruptedException {
+		if (isMultiTask() && groupSize > 0) {
+			registerReduction(red, inOrder);
+			waitTillFinished();
+			return incrementalReduction.getAnswer();
+		}
+		
 		waitTillFinished();
 		
 		// TODO want to make this like the Parallel Iterator's reduction.. i.e. checks initial value, etc.. 
@@ -137,6 +257,21 @@ public class TaskIDGroup<E> extends TaskID<E> {
 		return reductionAnswer;
 	}
 	
+	private void registerReduction(Reduction<E> red, boolean inOrder) throws InterruptedException {
+		//-- the results of sub-tasks that already completed are folded by this thread, so the sub-tasks must exist
+		awaitExpansion();
+		
+		reductionLock.lock();
+		try {
+			if (registeredReduction)
+				return;
+			registeredReduction = true;
+		} finally {
+			reductionLock.unlock();
+		}
+		incrementalReduction.register(red, inOrder, this);
+	}
+	
 	/**
 	 * Returns the result of a particular task.
 	 * @param relativeID The relative ID of the task whose result is wanted.
@@ -148,6 +283,89 @@ public class TaskIDGroup<E> extends TaskID<E> {
 		return (E) innerTasks.get(relativeID).getReturnResult();
 	}
 	
+	/**
+	 * Returns an iterator over the <code>TaskID</code>s contained in this group, in the order they complete (rather than 
+	 * in relative ID order). The iterator's <code>next()</code> method blocks until the next task completes, so results may 
+	 * be processed as they arrive, while slower tasks are still executing. As always, a worker thread executes other tasks 
+	 * while it waits. 
+	 * <br><br>
+	 * Each call returns a new iterator over all the tasks, including those that completed before this method was called.
+	 * For a group populated by the user, only the tasks added before the first call of this method are included.
+	 * @return	An iterator over this group of TaskIDs, in completion order.
+	 * @see #completionStream()
+	 */
+	public Iterator<TaskID<?>> completionOrder() {
+		return getCompletionOrder().iterator();
+	}
+	
+	/**
+	 * Returns a sequential stream of the <code>TaskID</code>s contained in this group, in the order they complete.
+	 * @return	A stream of this group of TaskIDs, in completion order.
+	 * @see #completionOrder()
+	 */
+	public Stream<TaskID<?>> completionStream() {
+		CompletionOrder order = getCompletionOrder();
+		return StreamSupport.stream(Spliterators.spliterator(order.iterator(), order.size(), 
+				Spliterator.ORDERED | Spliterator.SIZED | Spliterator.NONNULL), false);
+	}
+	
+	private synchronized CompletionOrder getCompletionOrder() {
+		if (completionOrder == null) {
+			//-- not a multi-task, so the members are not counted by oneMoreInnerTaskCompleted()
+			final CompletionOrder order = new CompletionOrder(innerTasks.size());
+			for (final TaskID<?> member : innerTasks) {
+				member.toCompletionStage().whenComplete(new BiConsumer<Object, Throwable>() {
+					@Override
+					public void accept(Object result, Throwable failure) {
+						order.completed(member);
+					}
+				});
+			}
+			completionOrder = order;
+		}
+		return completionOrder;
+	}
+	
+	/**
+	 * Waits for a particular task to complete, and returns it. 
+	 * @param relativeID The relative ID of the task whose result is wanted.
+	 */
+	TaskID<?> awaitInnerTask(int relativeID) throws ExecutionException, InterruptedException {
+		TaskID<?> task = innerTasks.get(relativeID);
+		task.waitTillFinished();
+		if (task.cancelledSuccessfully())
+			throw new ParaTaskRuntimeException("Attempting to get the result of a cancelled Task!");
+		return task;
+	}
+	
+	/**
+	 * Executes an inner task of this group, which stores the result itself rather than returning it (see 
+	 * {@link PrimitiveTaskIDGroup}). Other groups leave the inner task to be executed as any other task.
+	 * @return	<code>true</code> if this group executed the inner task, <code>false</code> otherwise.
+	 * @throws InvocationTargetException	If the inner task threw an exception.
+	 */
+	boolean invokeInnerTask(TaskID<?> innerTask) throws InvocationTargetException {
+		return false;
+	}
+	
+	/**
+	 * Called with the result of an inner task, which may store it in this group (indexed by relative ID) rather than in 
+	 * its own <code>TaskID</code>. Multi-tasks with a primitive result type do so (see {@link PrimitiveTaskIDGroup}), other 
+	 * groups leave the result to the inner task.
+	 * @return	<code>true</code> if this group stored the result, <code>false</code> if the inner task should keep it.
+	 */
+	boolean storeInnerTaskResult(int relativeID, E result) {
+		return false;
+	}
+	
+	/**
+	 * Returns the result of an inner task, given the result the inner task kept itself (see 
+	 * {@link #storeInnerTaskResult(int, Object)}).
+	 */
+	E loadInnerTaskResult(int relativeID, E result) {
+		return result;
+	}
+	
 	/**
 	 * Return an iterator for the set of <code>TaskID</code>s contained in this group.
 	 * @return	An iterator for this group of TaskIDs.
@@ -158,20 +376,33 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	
 	/**
 	 * Increments the number of inner tasks that have finished executing. Then checks if all inner-tasks
-	 * are completed. If that is the case, then checks if there are any exceptions asynchronously recorded
-	 * for any of the inner-tasks, and calls their handlers. Moreover, it checks for slots to notify   
-	 * and executes them. Then it sets the task as "complete".
+	 * are completed. If that is the case, then combines the views of any reducers used by the inner-tasks, 
+	 * and checks if there are any exceptions asynchronously recorded for any of the inner-tasks, and calls 
+	 * their handlers. Moreover, it checks for slots to notify and executes them. Then it sets the task as "complete".
+	 * 
+	 * @param innerTask	The inner task that completed, whose result may now be folded into the reduction (if any)
 	 * 
 	 * @author Mostafa Mehrabi
 	 * @since  9/9/2014
 	 */
-	void oneMoreInnerTaskCompleted() { 
+	void oneMoreInnerTaskCompleted(TaskID<?> innerTask) { 
+		if (!innerTask.hasUserError() && !innerTask.cancelledSuccessfully())
+			incrementalReduction.resultAvailable(innerTask);
+		else
+			incrementalReduction.resultUnavailable(innerTask);
+		
 		int numCompleted = numTaskCompleted.incrementAndGet();
 		
 		if (groupSize == numCompleted) {
 			//-- this is the last task in the multi-task group, therefore need to invoke slots/handlers
 			boolean nothingToQueue = true;
 			
+			combineReducers();
+			
+			ArrayList<Slot> toExecute = new ArrayList<Slot>();
+			if (executeScheduledInterimSlots(toExecute) > 0)
+				nothingToQueue = false;
+			
 			if (hasUserError()) {
 			for (Iterator<TaskID<?>> it = groupMembers(); it.hasNext(); ) {
 					TaskID<?> task = it.next();
@@ -180,7 +411,7 @@ public class TaskIDGroup<E> extends TaskID<E> {
 						Slot handler = getExceptionHandler(ex.getClass());
 						
 						if (handler != null) {
-							callTaskListener(handler);
+							toExecute.add(handler);
 							nothingToQueue = false;
 						} else {
 							System.err.println("No asynchronous exception handler found in Task " + task.globalID() + " for the following exception: ");
@@ -191,20 +422,56 @@ public class TaskIDGroup<E> extends TaskID<E> {
 			}
 			
 			//-- executeSlots
-			if (hasSlots) {
-				executeSlots();
+			if (hasSlots()) {
+				executeSlots(toExecute);
 				nothingToQueue = false;
 			} else {
 			}
 
 			if (nothingToQueue) {
 				setComplete();
+			} else if (isCompleteBeforeSlots()) {
+				setComplete();
+				callTaskListener(toExecute);
 			} else {
-				callTaskListener(new Slot(ParaTaskHelper.setCompleteSlot, this, false, Slot.SetCompleteSlot.TRUE));
+				releaseBlockedThreadsBeforeSlots();
+				toExecute.add(setCompleteSlot());
+				callTaskListener(toExecute);
 			}
 		} 
 	}
 
+	/**
+	 * Records an inner task in the completion order (see {@link #completionOrder()}). Only called once the inner task
+	 * has been set as complete, so the completion order never hands out a task that has not completed yet.
+	 */
+	void innerTaskSetComplete(TaskID<?> innerTask) {
+		completionOrder.completed(innerTask);
+	}
+	
+	/**
+	 * Registers a reducer whose views are updated by the sub-tasks of this multi-task.
+	 * @see Reducer
+	 */
+	synchronized void registerReducer(Reducer<?> reducer) {
+		if (reducers == null)
+			reducers = new ArrayList<Reducer<?>>();
+		if (!reducers.contains(reducer))
+			reducers.add(reducer);
+	}
+	
+	private void combineReducers() {
+		ArrayList<Reducer<?>> registered;
+		synchronized (this) {
+			registered = reducers;
+			reducers = null;
+		}
+		if (registered != null) {
+			for (Reducer<?> reducer : registered)
+				reducer.combineViews();
+		}
+	}
+
 	@Override
 	public Throwable getException() {
 		return exceptionGroup;
@@ -214,6 +481,72 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	public E getReturnResult() throws ExecutionException, InterruptedException {
 		throw new UnsupportedOperationException("This is a TaskIDGroup, you must either specify a Reduction or get individual results from the inner TaskID members.");
 	}
+	
+	/**
+	 * Waits for all the inner tasks to complete, as {@link #waitTillFinished()} does. A group has no result of its own, so
+	 * this returns <code>null</code> (as does its <code>CompletionStage</code>). The results of the inner tasks are
+	 * available through {@link #reduce(Reduction)} or {@link #getInnerTaskResult(int)}.
+	 * @throws ParaTaskExceptionGroup	If any of the inner tasks failed.
+	 * @see Future#get()
+	 */
+	@Override
+	public E get() throws InterruptedException, ExecutionException {
+		waitTillFinished();
+		return null;
+	}
+	
+	/**
+	 * Same as {@link #get()}, but waits at most for the given time for the inner tasks to complete.
+	 * @see Future#get(long, TimeUnit)
+	 */
+	@Override
+	public E get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!awaitCompletion(System.nanoTime() + unit.toNanos(timeout)))
+			throw new TimeoutException("Group " + globalID + " did not complete within " + timeout + " " + unit);
+		waitTillFinished();
+		return null;
+	}
+	
+	/**
+	 * A multi-task waits like a single task, but a group populated by the user waits for each inner task in turn (as
+	 * {@link #waitTillFinished()} does), until the deadline.
+	 */
+	@Override
+	boolean awaitCompletion(long deadline) throws InterruptedException {
+		if (isMultiTask())
+			return super.awaitCompletion(deadline);
+		
+		for (int i = innerTasks.size() - 1; i >= 0; i--) {
+			if (!innerTasks.get(i).awaitCompletion(deadline))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * The <code>CompletionStage</code> of a group completes with a <code>null</code> result, or with a 
+	 * <code>ParaTaskExceptionGroup</code> containing the exceptions of all the failed inner tasks.
+	 */
+	@Override
+	Throwable getCompletionException() {
+		if (isMultiTask())
+			return buildExceptionGroup();
+		
+		//-- a group populated by the user only records the exceptions of its members once it is waited for
+		ArrayList<Throwable> failures = new ArrayList<Throwable>();
+		for (TaskID<?> member : innerTasks) {
+			if (member.hasUserError())
+				failures.add(member.getException());
+		}
+		String reason = "Exception(s) occured inside the tasks of group (GlobalID of "+globalID+"). Individual exceptions are accessed via getExceptionSet()";
+		return new ParaTaskExceptionGroup(reason, failures.toArray(new Throwable[0]));
+	}
+	
+	private ParaTaskExceptionGroup buildExceptionGroup() {
+		String reason = "Exception(s) occured inside multi-task execution (GlobalID of "+globalID+"). Individual exceptions are accessed via getExceptionSet()";
+		exceptionGroup = new ParaTaskExceptionGroup(reason, exceptionList.toArray(new Throwable[0]));
+		return exceptionGroup;
+	}
 
 	public E getReturnResult(Reduction<E> red) throws ExecutionException, InterruptedException {
 		return reduce(red);
@@ -243,7 +576,7 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	@Override
 	void setException(Throwable exception) {
 		exceptionList.add(exception);
-		hasUserError.set(true);
+		setStateFlags(USER_ERROR);
 	}
 
 	@Override
@@ -261,11 +594,25 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	}
 	
 	/**
-	 * Waits for all the contained inner tasks to complete. It goes through all inner-tasks and
-	 * if an inner-task is a TaskIDGroup, which means there is another multi-task inside the group
-	 * waits until that inner multi-task is expanded and all its task are finished. Then, it proceeds 
-	 * to finishe other inner-tasks.
-	 * If an inner-task is a TaskID, which means it is a normal task, wait until that task is completed.
+	 * A group cannot be cancelled as a whole (see {@link #cancelAttempt()}), so this always returns <code>false</code>, as 
+	 * <code>Future</code> requires of a task that could not be cancelled.
+	 * @see Future#cancel(boolean)
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+	
+	/**
+	 * Waits for all the contained inner tasks to complete. 
+	 * <br><br>
+	 * A multi-task counts its completed inner tasks (see {@link #oneMoreInnerTaskCompleted(TaskID)}), and the last inner 
+	 * task to complete sets the group as complete. Therefore, waiting for a multi-task is the same as waiting for a single 
+	 * task: a worker thread executes other tasks and then parks, other threads block on a latch, and both are released as 
+	 * soon as the last inner task completes. 
+	 * <br><br>
+	 * For a group populated by the user, it goes through all inner-tasks and waits for each of them in turn (including 
+	 * inner multi-tasks).
 	 *
 	 * @author Kingsley
 	 * @author Mostafa Mehrabi
@@ -274,31 +621,20 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	 * */
 	@Override
 	public void waitTillFinished() throws ExecutionException, InterruptedException {
-		if(isMultiTask()){
-			while(!isExpanded)
-				Thread.sleep(ParaTask.WORKER_SLEEP_DELAY);
-		}
-		int size = innerTasks.size();
-		for (int i = size-1; i >= 0; i--) {// wait for them in reverse order (LIFO)
-			try {
-				TaskID<?> taskID= innerTasks.get(i);
-				if (taskID instanceof TaskIDGroup) {
-					TaskIDGroup<?> taskIDGroup = (TaskIDGroup<?>) taskID;
-					while (!taskIDGroup.getExpanded()) {
-						Thread.sleep(ParaTask.WORKER_SLEEP_DELAY);
-					}
-					taskIDGroup.waitTillFinished();
-				} else {
-					taskID.waitTillFinished();
+		if (isMultiTask()) {
+			awaitCompletion();
+		} else {
+			int size = innerTasks.size();
+			for (int i = size-1; i >= 0; i--) {// wait for them in reverse order (LIFO)
+				try {
+					innerTasks.get(i).waitTillFinished();
+				} catch (ExecutionException e) {
+					this.setException(e);
 				}
-			} catch (ExecutionException e) {
-				this.setException(e);
 			}
 		}
-		if (hasUserError.get()) {
-			String reason = "Exception(s) occured inside multi-task execution (GlobalID of "+globalID+"). Individual exceptions are accessed via getExceptionSet()";
-			exceptionGroup = new ParaTaskExceptionGroup(reason, exceptionList.toArray(new Throwable[0]));
-			throw exceptionGroup;
+		if (hasUserError()) {
+			throw buildExceptionGroup();
 		}
 	}
 	
@@ -308,42 +644,58 @@ public class TaskIDGroup<E> extends TaskID<E> {
 	 * all threads have reached a specific point in the program. 
 	 * <br>
 	 * Therefore, while none of the threads have called <code>barrier()</code>, all threads carry on doing their
-	 * ordinary tasks. Once <code>barrier()</code> is called by a thread, that thread has to wait (either doing 
-	 * some other tasks, or going to sleep) until all other threads arrive to that check point (i.e. call 
-	 * <code>barrier()</code>). When all threads have called <code>barrier()</code>, barrier's counter will
-	 * be set back to <b>zero</b>, and threads can carry on doing their tasks.
+	 * ordinary tasks. Once <code>barrier()</code> is called by a thread, that thread has to wait (executing some 
+	 * other tasks, spinning, or parking) until all other threads arrive to that check point (i.e. call 
+	 * <code>barrier()</code>). Each use of the barrier is a new generation, so the barrier may be reused straight
+	 * away by sub-tasks that iterate.
+	 * 
+	 * @param relativeID	The relative ID of the sub-task arriving at the barrier
+	 * @see MultiTaskBarrier
 	 * 
 	 * @author Mostafa Mehrabi
 	 * @since  9/9/2014
 	 * */
-	void barrier() throws InterruptedException, BrokenBarrierException {
-		int pos = barrier.incrementAndGet();
-		WorkerThread currentWorker = (WorkerThread) Thread.currentThread();
-		
-		if (pos != groupSize) {
-			while (barrier.get() != groupSize && barrier.get() != 0) {
-				//-- keep executing other tasks until all the threads have reached the barrier
-				currentWorker.executeAnotherTaskOrSleep();
-			}
-		} else {
-			//-- this is the last thread to arrive.. reset the barrier
-			barrier.set(0);
-		}
+	void barrier(int relativeID) throws InterruptedException, BrokenBarrierException {
+		getBarrier().await(relativeID);
+	}
+	
+	private synchronized MultiTaskBarrier getBarrier() {
+		if (barrier == null)
+			barrier = new MultiTaskBarrier(groupSize);
+		return barrier;
 	}
-
 
 	/**
 	 * 
 	 * @author Kingsley
 	 * @since 08/05/2013
 	 * 
-	 * After a multi task worker thread expand a mult task, call this method to set a "true" value.
+	 * After a multi task worker thread expand a mult task, call this method to set a "true" value. This releases the
+	 * threads waiting for the expansion.
 	 */
 	protected void setExpanded(boolean isExpanded) {
-		this.isExpanded = isExpanded;
+		if (isExpanded)
+			expansionLatch.countDown();
 	}
 	
 	protected boolean getExpanded(){
-		return isExpanded;
+		return expansionLatch.getCount() == 0;
+	}
+	
+	/**
+	 * Waits until the multi task has been expanded. A worker thread executes other tasks while it waits, since it may 
+	 * have to expand the multi task itself. 
+	 */
+	void awaitExpansion() throws InterruptedException {
+		Thread t = Thread.currentThread();
+		if (t instanceof WorkerThread) {
+			WorkerThread currentWorker = (WorkerThread) t;
+			while (!getExpanded()) {
+				if (!currentWorker.executeAnotherTask())
+					expansionLatch.await(ParaTask.WORKER_SLEEP_DELAY, TimeUnit.MILLISECONDS);
+			}
+		} else {
+			expansionLatch.await();
+		}
 	}
 }
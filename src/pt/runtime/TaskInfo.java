@@ -19,9 +19,13 @@
 
 package pt.runtime;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
  
 /**
  * 
@@ -31,8 +35,13 @@ import java.util.Iterator;
  */ 
 public class TaskInfo {
 	
+	private static final Object[] NO_PARAMETERS = new Object[]{};
+	private static final int[] NO_INDEXES = new int[]{};
+	
 	private Method method = null;
-	private Object[] parameters = new Object[]{};
+	private TaskCall taskCall = null;
+	private TaskInvoker invoker = null;
+	private Object[] parameters = null;
 	private Object instance = null;
 	private Thread registeringThread = null;
 	private ArrayList<Slot> slotsToNotify = null;
@@ -40,8 +49,8 @@ public class TaskInfo {
 	private ArrayList<TaskID> dependences = null;
 	
 	// for implicit results/dequeuing
-	private int[] taskIdArgIndexes = new int[]{};
-	private int[] queueArgIndexes = new int[]{};
+	private int[] taskIdArgIndexes = NO_INDEXES;
+	private int[] queueArgIndexes = NO_INDEXES;
 	
 	private boolean hasAnySlots = false;
 	private boolean isPipeline = false;
@@ -50,6 +59,10 @@ public class TaskInfo {
 	private ArrayList<Class> excHandler_registeredExceptions = null;
 	private ArrayList<Slot> excHandler_handlers = null;
 	
+	//-- the index of the handler resolved for each exception class (or NO_HANDLER), the sub-tasks of a multi-task share it
+	private static final Integer NO_HANDLER = -1;
+	private volatile ConcurrentHashMap<Class, Integer> excHandler_resolved = null;
+	
 	private boolean isInteractive = false;
 	
 	/**
@@ -86,12 +99,34 @@ public class TaskInfo {
 		}
 	}
 	
+	/**
+	 * Adds a dependency on the given <code>CompletionStage</code> (e.g. a <code>CompletableFuture</code>). The stage is
+	 * bridged to a <code>TaskID</code> without blocking any thread.
+	 * @param otherStage
+	 * @see TaskID#fromCompletionStage(CompletionStage)
+	 */
+	public void addDependsOn(CompletionStage<?> otherStage) {
+		if (otherStage != null) {
+			addDependsOn(TaskID.fromCompletionStage(otherStage));
+		} else {
+			System.err.println("ParaTask warning: TaskInfo.addDependsOn(): null dependence ignored by TASK");
+		}
+	}
+	
 	public boolean isPipeline() {
 		return isPipeline;
 	}
 	
+	/**
+	 * Returns the arguments of the task. For a task compiled to a {@link TaskCall}, the arguments are only boxed into
+	 * an array when this method is called.
+	 */
 	public Object[] getParameters() {
-		return parameters;
+		if (parameters != null)
+			return parameters;
+		if (taskCall != null)
+			return taskCall.getArguments();
+		return NO_PARAMETERS;
 	}
 	
 	public int[] getTaskIdArgIndexes() {
@@ -107,11 +142,85 @@ public class TaskInfo {
 	}
 	
 	public Method getMethod() {
+		if (method == null && taskCall != null)
+			return taskCall.getMethod();
 		return method;
 	}
+	
+	/**
+	 * Returns the invoker used to execute the method, which is bound once per method (rather than once per task).
+	 * @see TaskInvoker
+	 */
+	TaskInvoker getInvoker() {
+		if (invoker == null)
+			invoker = taskCall != null ? taskCall.getInvoker() : TaskInvoker.forMethod(method);
+		return invoker;
+	}
+	
+	/**
+	 * Replaces the implicit <code>TaskID</code> arguments with their results. Only called once those tasks have completed.
+	 */
+	void substituteTaskIdArguments() throws ExecutionException, InterruptedException {
+		if (parameters == null) {
+			if (taskCall != null)
+				taskCall.substituteTaskIdArguments();
+			return;
+		}
+		//-- the sub-tasks of a multi-task share the parameters, so they may have been substituted already
+		for (int index : taskIdArgIndexes) {
+			if (parameters[index] instanceof TaskID)
+				parameters[index] = ((TaskID) parameters[index]).getReturnResult();
+		}
+	}
+	
+	/**
+	 * Executes the method with the arguments of the task. A {@link TaskCall} is called directly, with the arguments it 
+	 * captured.
+	 */
+	Object invoke() throws IllegalAccessException, InvocationTargetException {
+		if (taskCall == null)
+			return getInvoker().invoke(instance, getParameters());
+		
+		try {
+			return getTaskCall().call(instance);
+		} catch (Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+	}
+	
+	/**
+	 * Checks whether the task is compiled to a {@link TaskCall}.
+	 */
+	boolean hasTaskCall() {
+		return taskCall != null;
+	}
+	
+	/**
+	 * Returns the {@link TaskCall} of the task, holding the arguments of the task (i.e. after copying them into its 
+	 * fields if they were set by {@link #setParameters(Object...)}).
+	 */
+	TaskCall getTaskCall() {
+		if (parameters != null)
+			taskCall.setArguments(parameters);
+		return taskCall;
+	}
 
 	public void setMethod(Method method) {
 		this.method = method;
+		this.taskCall = null;
+		this.invoker = null;
+	}
+	
+	/**
+	 * [This is only intended for internal use of the ParaTask compiler and runtime]
+	 * <br><br>
+	 * Sets the compiled body of the task, which is called directly instead of through a <code>Method</code>. Unless
+	 * {@link #setParameters(Object...)} is also called, the arguments are those captured by the <code>TaskCall</code>.
+	 */
+	public void setTaskCall(TaskCall taskCall) {
+		this.taskCall = taskCall;
+		this.method = null;
+		this.invoker = null;
 	}
 	
 	public void setIsPipeline(boolean isPipeline) {
@@ -182,22 +291,41 @@ public class TaskInfo {
 		
 		excHandler_registeredExceptions.add(exceptionClass);
 		excHandler_handlers.add(handler);
+		excHandler_resolved = null;
 		hasAnySlots = true;
 	}
 	
 	
 	/*
 	 *	This method returns the first suitable handler (if any is found) for the specified exception. It considers the 
-	 *	correct inheritance structure, and the order of handlers considered is the same order as the programmer listed in the trycatch  
+	 *	correct inheritance structure, and the order of handlers considered is the same order as the programmer listed in the trycatch.
+	 *	The handler is only resolved once per exception class.
 	 */
 	public Slot getExceptionHandler(Class occuredException) {
 		if (excHandler_registeredExceptions == null)
 			return null;
-		for (int i = 0; i < excHandler_registeredExceptions.size(); i++) {
-			if (ParaTaskHelper.isSubClassOf(occuredException, excHandler_registeredExceptions.get(i))) 
-				return excHandler_handlers.get(i);
+		
+		ConcurrentHashMap<Class, Integer> resolved = excHandler_resolved;
+		if (resolved == null) {
+			synchronized (this) {
+				if (excHandler_resolved == null)
+					excHandler_resolved = new ConcurrentHashMap<Class, Integer>();
+				resolved = excHandler_resolved;
+			}
+		}
+		
+		Integer index = resolved.get(occuredException);
+		if (index == null) {
+			index = NO_HANDLER;
+			for (int i = 0; i < excHandler_registeredExceptions.size(); i++) {
+				if (ParaTaskHelper.isSubClassOf(occuredException, excHandler_registeredExceptions.get(i))) {
+					index = i;
+					break;
+				}
+			}
+			resolved.put(occuredException, index);
 		}
-		return null;
+		return index < 0 ? null : excHandler_handlers.get(index);
 	}
 	
 	public void addInterSlotToNotify(Slot slot) {
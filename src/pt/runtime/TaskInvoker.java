@@ -0,0 +1,400 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Invokes the method of a task. This is used instead of <code>Method.invoke()</code>, which checks access and the 
+ * arguments on every call.
+ * <br><br>
+ * Where possible, the method is bound once to a small functional interface generated by the 
+ * <code>LambdaMetafactory</code> (one interface per number of arguments, counting the instance), which calls the method
+ * directly. This needs a public method that is visible from the ParaTask runtime, with at most 
+ * {@link #MAX_LAMBDA_ARITY} arguments. Methods with more arguments are bound to a <code>MethodHandle</code> of type 
+ * <code>(Object, Object[])Object</code>, which takes the instance (ignored for static methods) and spreads the arguments
+ * of the task. Any other method (or one a <code>MethodHandle</code> cannot be created for) is invoked by reflection, after
+ * making it accessible if it is not public: on 
+ * JDK 8, <code>Method.invoke()</code> is compiled to its own accessor class after a few calls, which is faster than a
+ * <code>MethodHandle</code> for a few arguments, but not for many (see <code>TaskInvokerBenchmark</code> in
+ * <code>bench</code>).
+ * <br><br>
+ * Invokers are cached by <code>Method</code>, since a new <code>TaskInfo</code> is created for every invocation of a 
+ * task, while the <code>Method</code> is resolved only once by the code generated for the task. Tasks compiled to a
+ * {@link TaskCall} do not need any of this, since their invoker calls the generated code directly. The methods of 
+ * slots (i.e. <code>notify</code> and <code>trycatch</code> clauses) are invoked in the same way (see {@link Slot}).
+ * <br><br>
+ * Exceptions are reported in the same way as by <code>Method.invoke()</code>, so that callers can handle both alike. In 
+ * particular, exceptions thrown by the method itself are wrapped in an <code>InvocationTargetException</code>, while an 
+ * instance or arguments that do not fit the method cause an <code>IllegalArgumentException</code> (or a 
+ * <code>NullPointerException</code> for a missing instance).
+ */
+abstract class TaskInvoker {
+	
+	//-- the number of arguments (including the instance) supported by the generated functional interfaces
+	static final int MAX_LAMBDA_ARITY = 4;
+	
+	private static final ConcurrentHashMap<Method, TaskInvoker> invokers = new ConcurrentHashMap<Method, TaskInvoker>();
+	
+	/**
+	 * Invokes the method on the specified instance (ignored for static methods), with the specified arguments.
+	 */
+	abstract Object invoke(Object instance, Object[] args) throws IllegalAccessException, InvocationTargetException;
+	
+	/**
+	 * Whether {@link #invoke(Object, Object[])} may call the method from the ParaTask runtime. This is only 
+	 * <code>false</code> for a non-public method that could not be made accessible (e.g. under a security manager), 
+	 * which must then be called through code generated in its own class.
+	 */
+	boolean isAccessible() {
+		return true;
+	}
+	
+	/**
+	 * Returns the (cached) invoker for the specified method.
+	 */
+	static TaskInvoker forMethod(Method method) {
+		TaskInvoker invoker = invokers.get(method);
+		if (invoker == null) {
+			invoker = create(method);
+			TaskInvoker existing = invokers.putIfAbsent(method, invoker);
+			if (existing != null)
+				invoker = existing;
+		}
+		return invoker;
+	}
+	
+	/**
+	 * The ways in which a method may be invoked.
+	 */
+	enum Strategy {
+		/**
+		 * A functional interface generated by the <code>LambdaMetafactory</code> (see {@link #MAX_LAMBDA_ARITY}).
+		 */
+		LAMBDA,
+		
+		/**
+		 * A <code>MethodHandle</code> spreading the arguments.
+		 */
+		HANDLE,
+		
+		/**
+		 * <code>Method.invoke()</code>.
+		 */
+		REFLECTION
+	}
+	
+	/**
+	 * Creates an invoker with the specified strategy, which is not cached (e.g. to compare the strategies).
+	 * @throws Throwable	If the strategy is not applicable to the method.
+	 */
+	static TaskInvoker create(Method method, Strategy strategy) throws Throwable {
+		switch (strategy) {
+		case LAMBDA:
+			if (!LambdaInvoker.isApplicable(method))
+				throw new IllegalArgumentException("Cannot bind " + method + " to a functional interface");
+			return new LambdaInvoker(method);
+		case HANDLE:
+			return new HandleInvoker(method);
+		default:
+			return new ReflectiveInvoker(method);
+		}
+	}
+	
+	private static TaskInvoker create(Method method) {
+		if (LambdaInvoker.isApplicable(method)) {
+			try {
+				return new LambdaInvoker(method);
+			} catch (Throwable t) {
+				//-- fall back to reflection
+			}
+		}
+		if (arity(method) > MAX_LAMBDA_ARITY) {
+			try {
+				return new HandleInvoker(method);
+			} catch (IllegalAccessException e) {
+				return new ReflectiveInvoker(method);
+			} catch (RuntimeException e) {
+				//-- e.g. a SecurityException when making the method accessible 
+				return new ReflectiveInvoker(method);
+			}
+		}
+		return new ReflectiveInvoker(method);
+	}
+	
+	/*
+	 * The number of arguments of the method, including the instance.
+	 */
+	private static int arity(Method method) {
+		return method.getParameterTypes().length + (Modifier.isStatic(method.getModifiers()) ? 0 : 1);
+	}
+	
+	/**
+	 * Returns the exception to throw after a generated invoker failed with the specified exception. The invoker converts 
+	 * the instance and the arguments before calling the method, so the method was not called if they do not fit its 
+	 * parameters. In that case, the exception thrown by <code>Method.invoke()</code> is thrown instead. Otherwise, the 
+	 * exception was thrown by the method, and is wrapped in an <code>InvocationTargetException</code>.
+	 */
+	static InvocationTargetException invocationFailed(Method method, Object instance, Object[] args, Throwable t) {
+		if (!Modifier.isStatic(method.getModifiers())) {
+			if (instance == null)
+				throw new NullPointerException();
+			if (!method.getDeclaringClass().isInstance(instance))
+				throw new IllegalArgumentException("object is not an instance of declaring class");
+		}
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		if ((args == null ? 0 : args.length) != parameterTypes.length)
+			throw new IllegalArgumentException("wrong number of arguments");
+		if (!fits(parameterTypes, args, true))
+			throw new IllegalArgumentException("argument type mismatch");
+		return new InvocationTargetException(t);
+	}
+	
+	private static final List<Class<?>> NUMERIC_TYPES = Arrays.<Class<?>>asList(byte.class, short.class, int.class, long.class, float.class, double.class);
+	
+	/*
+	 * Whether the arguments fit the parameter types, where a primitive parameter takes its wrapper class and, if widening,
+	 * also the wrapper classes of the primitive types it can be widened from (as for Method.invoke()).
+	 */
+	private static boolean fits(Class<?>[] parameterTypes, Object[] args, boolean widening) {
+		for (int i = 0; i < parameterTypes.length; i++) {
+			Class<?> type = parameterTypes[i];
+			Object arg = args[i];
+			if (!type.isPrimitive()) {
+				if (arg != null && !type.isInstance(arg))
+					return false;
+				continue;
+			}
+			if (arg == null)
+				return false;
+			Class<?> argType = MethodType.methodType(arg.getClass()).unwrap().returnType();
+			if (argType == type)
+				continue;
+			if (!widening || !argType.isPrimitive())
+				return false;
+			if (argType == char.class) {
+				//-- char widens to the same types as short, except short
+				if (type == short.class)
+					return false;
+				argType = short.class;
+			}
+			int from = NUMERIC_TYPES.indexOf(argType);
+			if (from < 0 || NUMERIC_TYPES.indexOf(type) <= from)
+				return false;
+		}
+		return true;
+	}
+	
+	private static class HandleInvoker extends TaskInvoker {
+		
+		private final Method method;
+		private final MethodHandle handle;
+		
+		HandleInvoker(Method method) throws IllegalAccessException {
+			this.method = method;
+			MethodHandle direct;
+			try {
+				direct = MethodHandles.lookup().unreflect(method);
+			} catch (IllegalAccessException e) {
+				method.setAccessible(true);
+				direct = MethodHandles.lookup().unreflect(method);
+			}
+			
+			int parameterCount = method.getParameterTypes().length;
+			boolean isStatic = Modifier.isStatic(method.getModifiers());
+			
+			//-- adapt to (Object, Object[])Object: box/unbox, take the instance (if any) and spread the arguments
+			MethodHandle generic = direct.asFixedArity().asType(MethodType.genericMethodType(isStatic ? parameterCount : parameterCount + 1));
+			if (isStatic)
+				generic = MethodHandles.dropArguments(generic, 0, Object.class);
+			handle = generic.asSpreader(Object[].class, parameterCount);
+		}
+		
+		@Override
+		Object invoke(Object instance, Object[] args) throws InvocationTargetException {
+			try {
+				return (Object) handle.invokeExact(instance, args);
+			} catch (Throwable t) {
+				throw invocationFailed(method, instance, args, t);
+			}
+		}
+	}
+	
+	interface Call0 { Object call(); }
+	interface Call1 { Object call(Object a); }
+	interface Call2 { Object call(Object a, Object b); }
+	interface Call3 { Object call(Object a, Object b, Object c); }
+	interface Call4 { Object call(Object a, Object b, Object c, Object d); }
+	
+	interface VoidCall0 { void call(); }
+	interface VoidCall1 { void call(Object a); }
+	interface VoidCall2 { void call(Object a, Object b); }
+	interface VoidCall3 { void call(Object a, Object b, Object c); }
+	interface VoidCall4 { void call(Object a, Object b, Object c, Object d); }
+	
+	private static final Class<?>[] CALL_INTERFACES = { Call0.class, Call1.class, Call2.class, Call3.class, Call4.class };
+	private static final Class<?>[] VOID_CALL_INTERFACES = { VoidCall0.class, VoidCall1.class, VoidCall2.class, VoidCall3.class, VoidCall4.class };
+	
+	private static class LambdaInvoker extends TaskInvoker {
+		
+		private final Method method;
+		private final Object function;
+		private final int parameterCount;
+		private final int arity;
+		private final boolean isStatic;
+		private final boolean isVoid;
+		
+		static boolean isApplicable(Method method) {
+			Class<?> declaringClass = method.getDeclaringClass();
+			if (arity(method) > MAX_LAMBDA_ARITY || method.isVarArgs())
+				return false;
+			if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(declaringClass.getModifiers()))
+				return false;
+			
+			//-- the generated class calls the method directly, so it must resolve the same class as the method's 
+			try {
+				return Class.forName(declaringClass.getName(), false, TaskInvoker.class.getClassLoader()) == declaringClass;
+			} catch (ClassNotFoundException e) {
+				return false;
+			}
+		}
+		
+		LambdaInvoker(Method method) throws Throwable {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle direct = lookup.unreflect(method);
+			
+			this.method = method;
+			parameterCount = method.getParameterTypes().length;
+			isStatic = Modifier.isStatic(method.getModifiers());
+			isVoid = method.getReturnType() == void.class;
+			arity = direct.type().parameterCount();
+			
+			Class<?> callInterface = isVoid ? VOID_CALL_INTERFACES[arity] : CALL_INTERFACES[arity];
+			MethodType erased = MethodType.genericMethodType(arity);
+			MethodType instantiated = direct.type().wrap();
+			if (isVoid) {
+				erased = erased.changeReturnType(void.class);
+				instantiated = instantiated.changeReturnType(void.class);
+			}
+			
+			CallSite site = LambdaMetafactory.metafactory(lookup, "call", MethodType.methodType(callInterface), erased, direct, instantiated);
+			function = site.getTarget().invoke();
+		}
+		
+		@Override
+		Object invoke(Object instance, Object[] args) throws IllegalAccessException, InvocationTargetException {
+			//-- the functional interface ignores extra arguments
+			if ((args == null ? 0 : args.length) != parameterCount)
+				throw new IllegalArgumentException("wrong number of arguments");
+			try {
+				if (isVoid) {
+					callVoid(instance, args);
+					return null;
+				}
+				return call(instance, args);
+			} catch (Throwable t) {
+				//-- the arguments are cast to the wrapper classes of primitive parameters, which Method.invoke() also widens
+				if (!fits(method.getParameterTypes(), args, false) && fits(method.getParameterTypes(), args, true))
+					return method.invoke(instance, args);
+				throw invocationFailed(method, instance, args, t);
+			}
+		}
+		
+		private Object call(Object instance, Object[] args) {
+			if (isStatic) {
+				switch (arity) {
+				case 0: return ((Call0) function).call();
+				case 1: return ((Call1) function).call(args[0]);
+				case 2: return ((Call2) function).call(args[0], args[1]);
+				case 3: return ((Call3) function).call(args[0], args[1], args[2]);
+				default: return ((Call4) function).call(args[0], args[1], args[2], args[3]);
+				}
+			} else {
+				switch (arity) {
+				case 1: return ((Call1) function).call(instance);
+				case 2: return ((Call2) function).call(instance, args[0]);
+				case 3: return ((Call3) function).call(instance, args[0], args[1]);
+				default: return ((Call4) function).call(instance, args[0], args[1], args[2]);
+				}
+			}
+		}
+		
+		private void callVoid(Object instance, Object[] args) {
+			if (isStatic) {
+				switch (arity) {
+				case 0: ((VoidCall0) function).call(); break;
+				case 1: ((VoidCall1) function).call(args[0]); break;
+				case 2: ((VoidCall2) function).call(args[0], args[1]); break;
+				case 3: ((VoidCall3) function).call(args[0], args[1], args[2]); break;
+				default: ((VoidCall4) function).call(args[0], args[1], args[2], args[3]); break;
+				}
+			} else {
+				switch (arity) {
+				case 1: ((VoidCall1) function).call(instance); break;
+				case 2: ((VoidCall2) function).call(instance, args[0]); break;
+				case 3: ((VoidCall3) function).call(instance, args[0], args[1]); break;
+				default: ((VoidCall4) function).call(instance, args[0], args[1], args[2]); break;
+				}
+			}
+		}
+	}
+	
+	private static class ReflectiveInvoker extends TaskInvoker {
+		
+		private final Method method;
+		private final boolean accessible;
+		
+		ReflectiveInvoker(Method method) {
+			this.method = method;
+			
+			//-- as for HandleInvoker, so that Method.invoke() does not fail every time on a non-public method 
+			boolean accessible = Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers());
+			if (!accessible) {
+				try {
+					method.setAccessible(true);
+					accessible = true;
+				} catch (SecurityException e) {
+					//-- left to the caller
+				}
+			}
+			this.accessible = accessible;
+		}
+		
+		@Override
+		boolean isAccessible() {
+			return accessible;
+		}
+		
+		@Override
+		Object invoke(Object instance, Object[] args) throws IllegalAccessException, InvocationTargetException {
+			return method.invoke(instance, args);
+		}
+	}
+}
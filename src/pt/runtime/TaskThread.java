@@ -20,7 +20,6 @@
 package pt.runtime;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Stack;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -69,6 +68,9 @@ public abstract class TaskThread extends Thread {
 
 	private static AtomicInteger nextThreadLocalID = new AtomicInteger(-1); 
 	
+	//-- a TaskThread that is not started itself, but executes a task on the current thread (e.g. a virtual thread)
+	private static ThreadLocal<TaskThread> boundTaskThread = new ThreadLocal<TaskThread>();
+	
 	public static void resetTaskThreads(){
 		nextThreadID.set(-1);
 		nextThreadLocalID.set(-1);
@@ -109,27 +111,24 @@ public abstract class TaskThread extends Thread {
 		currentTaskStack.push(task);
 		
 		TaskInfo info = task.getTaskInfo();
-		Method method = info.getMethod();
-		Object instance = info.getInstance();
-		Object[] args = info.getParameters();
 		Object result = null;
 		
 		// retrieve results from implicit taskids
-		int[] taskIdArgIndexes = info.getTaskIdArgIndexes();
-		for (int index : taskIdArgIndexes) {
-			try {
-				args[index] = ((TaskID)args[index]).getReturnResult();
-			} catch (InterruptedException e) {
-				// can't happen because task is guaranteed to have finished
-			} catch (ExecutionException e) {
-				// can't happen, handled somewhere else (eventually will be anyway)
-			}
+		try {
+			info.substituteTaskIdArguments();
+		} catch (InterruptedException e) {
+			// can't happen because task is guaranteed to have finished
+		} catch (ExecutionException e) {
+			// can't happen, handled somewhere else (eventually will be anyway)
 		}
 		
 		try {
-			result = method.invoke(instance, args);
-			
-			task.setReturnResult(result);
+			//-- the sub-tasks of a primitive multi-task store their results in the group without boxing them
+			TaskIDGroup<?> group = task.getGroup();
+			if (group == null || !group.invokeInnerTask(task)) {
+				result = info.invoke();
+				task.setReturnResult(result);
+			}
 			task.enqueueSlots(false);
 			
 			currentTaskStack.pop();
@@ -146,11 +145,37 @@ public abstract class TaskThread extends Thread {
 		return false; 
 	}
 	
+	/**
+	 * Returns the <code>TaskThread</code> on whose behalf the current thread executes tasks. This is normally the current 
+	 * thread itself, unless a <code>TaskThread</code> has been bound to the current thread using {@link #bindToCurrentThread()}.
+	 * @return	The current <code>TaskThread</code>, or <code>null</code> if the current thread is not a ParaTask thread
+	 */
+	static TaskThread currentTaskThread() {
+		Thread t = Thread.currentThread();
+		if (t instanceof TaskThread)
+			return (TaskThread) t;
+		return boundTaskThread.get();
+	}
+	
+	/*
+	 * Binds this (unstarted) TaskThread to the current thread, until unbindFromCurrentThread() is called. 
+	 */
+	protected void bindToCurrentThread() {
+		boundTaskThread.set(this);
+	}
+	
+	protected void unbindFromCurrentThread() {
+		boundTaskThread.remove();
+	}
+	
 	/**
 	 * Return the currently executing TaskID by this TaskThread 
 	 * @return	The current TaskID, or null if not working on a task
 	 */
 	public TaskID currentExecutingTask() {
+		//-- e.g. a pipeline thread, which enqueues tasks for the stages after it without executing a task itself
+		if (currentTaskStack.isEmpty())
+			return null;
 		return currentTaskStack.peek();
 	}
 	
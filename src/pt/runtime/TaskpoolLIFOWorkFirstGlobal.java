@@ -1,7 +1,6 @@
 package pt.runtime;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -82,8 +81,7 @@ public class TaskpoolLIFOWorkFirstGlobal extends TaskpoolLIFOWorkStealing {
 			 */
 			try {
 				
-				Method m = taskinfo.getMethod();
-				taskID.setReturnResult(m.invoke(taskinfo.getInstance(), taskinfo.getParameters()));
+				taskID.setReturnResult(taskinfo.invoke());
 				
 				/*
 				 * 	Once successfully invoked, clean up the rest of the TaskID info.
@@ -112,10 +110,11 @@ public class TaskpoolLIFOWorkFirstGlobal extends TaskpoolLIFOWorkStealing {
 			
 			//-- determine if this task is being enqueued from within another task.. if so, set the enclosing task (needed to 
 			//--		propogate exceptions to outer tasks (in case they have a suitable handler))
-			Thread rt = taskinfo.setRegisteringThread();
+			taskinfo.setRegisteringThread();
 			
-			if (rt instanceof TaskThread)
-				taskID.setEnclosingTask(((TaskThread)rt).currentExecutingTask());
+			TaskThread rt = TaskThread.currentTaskThread();
+			if (rt != null)
+				taskID.setEnclosingTask(rt.currentExecutingTask());
 			
 			if (taskinfo.hasAnySlots())
 				taskinfo.setTaskIDForSlotsAndHandlers(taskID);
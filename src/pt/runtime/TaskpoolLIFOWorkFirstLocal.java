@@ -12,7 +12,6 @@
 package pt.runtime;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 /**
  * 	
@@ -145,14 +144,13 @@ public class TaskpoolLIFOWorkFirstLocal extends TaskpoolLIFOWorkStealing {
 					 */
 					if(localOneoffTaskQueues.get(tid).size() >= localThreshold) {
 						TaskInfo taskInfo = taskID.getTaskInfo();
-						Method m = taskInfo.getMethod();
 						try {
 							/*
 							 * 	Use of a non-generic TaskID to allow the use of a setReturnResult() without
 							 * 	using objects for parameterisation.
 							 */
 							TaskID taskID2 = taskID;
-							taskID2.setReturnResult(m.invoke(taskInfo.getInstance(), taskInfo.getParameters()));
+							taskID2.setReturnResult(taskInfo.invoke());
 							taskID2.setComplete();
 						} catch (IllegalAccessException e) {
 							// TODO Auto-generated catch block
@@ -204,14 +202,13 @@ public class TaskpoolLIFOWorkFirstLocal extends TaskpoolLIFOWorkStealing {
 					 */
 					if(localOneoffTaskQueues.get(randThread).size() >= localThreshold) {
 						TaskInfo taskInfo = taskID.getTaskInfo();
-						Method m = taskInfo.getMethod();
 						try {
 							/*
 							 * 	Use of a non-generic TaskID to allow the use of a setReturnResult() without
 							 * 	using objects for parameterisation.
 							 */
 							TaskID taskID2 = taskID;
-							taskID2.setReturnResult(m.invoke(taskInfo.getInstance(), taskInfo.getParameters()));
+							taskID2.setReturnResult(taskInfo.invoke());
 							taskID2.setComplete();
 						} catch (IllegalAccessException e) {
 							// TODO Auto-generated catch block
@@ -265,14 +262,13 @@ public class TaskpoolLIFOWorkFirstLocal extends TaskpoolLIFOWorkStealing {
 				 */
 				if(localOneoffTaskQueues.get(randThread).size() >= localThreshold) {
 					TaskInfo taskInfo = taskID.getTaskInfo();
-					Method m = taskInfo.getMethod();
 					try {
 						/*
 						 * 	Use of a non-generic TaskID to allow the use of a setReturnResult() without
 						 * 	using objects for parameterisation.
 						 */
 						TaskID taskID2 = taskID;
-						taskID2.setReturnResult(m.invoke(taskInfo.getInstance(), taskInfo.getParameters()));
+						taskID2.setReturnResult(taskInfo.invoke());
 						taskID2.setComplete();
 					} catch (IllegalAccessException e) {
 						// TODO Auto-generated catch block
@@ -1,7 +1,6 @@
 package pt.runtime;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 
 /**
@@ -44,10 +43,11 @@ public class TaskpoolLIFOWorkFirstTaskDepth extends TaskpoolLIFOWorkStealing {
 		
 		//-- determine if this task is being enqueued from within another task.. if so, set the enclosing task (needed to 
 		//--		propogate exceptions to outer tasks (in case they have a suitable handler))
-		Thread rt = taskinfo.setRegisteringThread();
+		taskinfo.setRegisteringThread();
 		
-		if (rt instanceof TaskThread) {
-			TaskID<?> parentTask = ((TaskThread)rt).currentExecutingTask();
+		TaskThread rt = TaskThread.currentTaskThread();
+		if (rt != null) {
+			TaskID<?> parentTask = rt.currentExecutingTask();
 			taskID.setEnclosingTask(parentTask);
 			taskID.setTaskDepth(parentTask.getTaskDepth()+1);
 		}
@@ -58,9 +58,7 @@ public class TaskpoolLIFOWorkFirstTaskDepth extends TaskpoolLIFOWorkStealing {
 			 * 	Also while invoking the sequential method of the task, the return result has also been set.
 			 */
 			try {
-				Method m = taskinfo.getMethod();
-				taskID.setReturnResult(m.invoke(taskinfo.getInstance(), taskinfo.getParameters()));
-				m = null;
+				taskID.setReturnResult(taskinfo.invoke());
 				
 				/*
 				 * 	Once successfully invoked, clean up the rest of the TaskID info.
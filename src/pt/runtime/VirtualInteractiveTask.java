@@ -0,0 +1,105 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Executes a single interactive task (<code>IO_TASK</code>) on its own virtual thread. This is used instead of an
+ * {@link InteractiveThread} when {@link ParaTask.InteractiveThreadType#VIRTUAL} is selected, so that thousands of
+ * concurrent I/O-bound tasks do not need thousands of OS threads.
+ * <br><br>
+ * An instance of this class is never started as a thread itself. Instead, it is passed as the <code>Runnable</code> of
+ * a new virtual thread, and is bound to that virtual thread for the duration of the task (see
+ * {@link TaskThread#currentTaskThread()}). Therefore, {@link CurrentTask} and the enclosing-task bookkeeping behave
+ * exactly as they would inside an <code>InteractiveThread</code>.
+ * <br><br>
+ * Virtual threads are only available from Java 21, and are therefore looked up reflectively.
+ */
+class VirtualInteractiveTask extends TaskThread {
+
+	private static Method startVirtualThread = null;
+	private static boolean lookedUp = false;
+
+	private TaskID<?> taskID = null;
+
+	VirtualInteractiveTask(Taskpool taskpool, TaskID<?> taskID) {
+		super(taskpool);
+		this.taskID = taskID;
+	}
+
+	/**
+	 * Checks whether the running JVM supports virtual threads.
+	 */
+	static synchronized boolean isSupported() {
+		if (!lookedUp) {
+			try {
+				startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+			} catch (NoSuchMethodException e) {
+				startVirtualThread = null;
+			}
+			lookedUp = true;
+		}
+		return startVirtualThread != null;
+	}
+
+	/**
+	 * Starts a new virtual thread that executes the task.
+	 * @return	<code>false</code> if virtual threads are not available (e.g. a preview feature that is not enabled),
+	 * in which case the task was not started.
+	 */
+	boolean startVirtual() {
+		if (!isSupported())
+			return false;
+
+		try {
+			startVirtualThread.invoke(null, this);
+			return true;
+		} catch (IllegalAccessException e) {
+			return false;
+		} catch (InvocationTargetException e) {
+			//-- e.g. UnsupportedOperationException on a JVM where virtual threads are a preview feature
+			return false;
+		}
+	}
+
+	@Override
+	public void run() {
+		bindToCurrentThread();
+		try {
+			boolean success = executeTask(taskID);
+			if (success) {
+				try {
+					if (!taskID.cancelledSuccessfully())
+						taskID.getReturnResult();
+				} catch (ExecutionException e) {
+					e.printStackTrace();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		} finally {
+			taskpool.interactiveTaskCompleted(taskID);
+			unbindFromCurrentThread();
+		}
+	}
+}
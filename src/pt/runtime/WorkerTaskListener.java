@@ -0,0 +1,40 @@
+/*
+ *  Copyright (C) 2010 Nasser Giacaman, Oliver Sinnen
+ *
+ *  This file is part of Parallel Task.
+ *
+ *  Parallel Task is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  Parallel Task is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with Parallel Task. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pt.runtime;
+
+/**
+ * A task listener that executes the slots directly on the thread that completes the task (usually a worker thread), 
+ * before that thread continues with other tasks. This avoids handing the slots to another thread, but a long-running 
+ * slot delays the worker.
+ * <br><br>
+ * Since the task is only set as complete after its slots, a slot must not wait for the completion of its own task. 
+ */
+public class WorkerTaskListener extends AbstractTaskListener {
+	
+	@Override
+	public void executeSlot(Slot slot) {
+		doExecuteSlot(slot);
+	}
+
+	@Override
+	public void run() {
+		//nothing to do since the slots are executed as they are received
+	}
+}
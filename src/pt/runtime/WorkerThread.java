@@ -63,9 +63,7 @@ public class WorkerThread extends TaskThread {
 	 */
 	public boolean executeAnotherTaskOrSleep() {
 
-		TaskID task = taskpool.workerPollNextTask();
-		if (task != null) {
-			executeTask(task);
+		if (executeAnotherTask()) {
 			return true;
 		} else {
 			try {
@@ -77,6 +75,19 @@ public class WorkerThread extends TaskThread {
 		}
 	}
 	
+	/*
+	 * Same as executeAnotherTaskOrSleep(), but returns false immediately if there is no other task to execute. 
+	 * This allows callers to choose how to wait themselves (e.g. spin or park).
+	 */
+	boolean executeAnotherTask() {
+		TaskID task = taskpool.workerPollNextTask();
+		if (task != null) {
+			executeTask(task);
+			return true;
+		}
+		return false;
+	}
+	
 	/*
 	 * @author Kingsley
 	 * @since 23/05/2013